@@ -0,0 +1,61 @@
+package org.manifold.compiler;
+
+import java.util.Map;
+
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * The attributes declared by a node, port, connection or constraint type,
+ * numbered into slots 0, 1, 2, ... in declaration order. Each type builds
+ * its schema once; Attributes instances of that type then keep their
+ * values in a plain array indexed by slot.
+ */
+public class AttributeSchema {
+
+  private static final AttributeSchema empty =
+      new AttributeSchema(ImmutableMap.<String, TypeValue>of());
+
+  public static AttributeSchema of(Map<String, TypeValue> types) {
+    if (types.isEmpty()) {
+      return empty;
+    }
+    return new AttributeSchema(types);
+  }
+
+  private final String[] names;
+  private final TypeValue[] types;
+  private final Map<String, Integer> slots;
+
+  private AttributeSchema(Map<String, TypeValue> attributes) {
+    names = new String[attributes.size()];
+    types = new TypeValue[attributes.size()];
+    ImmutableMap.Builder<String, Integer> slotMap = ImmutableMap.builder();
+    int slot = 0;
+    for (Map.Entry<String, TypeValue> attr : attributes.entrySet()) {
+      names[slot] = attr.getKey();
+      types[slot] = attr.getValue();
+      slotMap.put(attr.getKey(), slot);
+      slot += 1;
+    }
+    slots = slotMap.build();
+  }
+
+  public int size() {
+    return names.length;
+  }
+
+  // Returns the slot of the named attribute, or -1 if there is none.
+  public int getSlot(String name) {
+    Integer slot = slots.get(name);
+    return slot == null ? -1 : slot;
+  }
+
+  public String getName(int slot) {
+    return names[slot];
+  }
+
+  public TypeValue getType(int slot) {
+    return types[slot];
+  }
+
+}
@@ -3,51 +3,100 @@ package org.manifold.compiler;
 import com.google.common.collect.ImmutableMap;
 
 import java.util.Map;
-import java.util.Set;
 
 public class Attributes {
-  private final Map<String, Value> data;
+  // shared by every value whose type declares no attributes
+  private static final Attributes empty = new Attributes(
+      AttributeSchema.of(ImmutableMap.<String, TypeValue>of()), new Value[0]);
 
-  public Attributes(Map<String, TypeValue> types, Map<String, Value> data)
-      throws UndeclaredAttributeException, InvalidAttributeException,
-      TypeMismatchException {
-    validateAttrNames(types.keySet(), data.keySet());
-    validateAttrTypes(types, data);
-    this.data = ImmutableMap.copyOf(data);
+  // Supplies the values of attributes made by deferred().
+  public interface Source {
+    // Returns the attributes, made by of() for the same schema. Called at
+    // most once; failures must be reported as unchecked exceptions.
+    Attributes read();
+  }
+
+  private final AttributeSchema schema;
+  // values[slot], for the slots of the schema; null until `source` has
+  // been read
+  private volatile Value[] values;
+  private Source source;
+
+  private Attributes(AttributeSchema schema, Value[] values) {
+    this.schema = schema;
+    this.values = values;
   }
 
-  private static void validateAttrNames(Set<String> typeNames,
-      Set<String> attrNames)
-      throws UndeclaredAttributeException, InvalidAttributeException {
-    for (String name : attrNames) {
-      if (!typeNames.contains(name)) {
-        throw new InvalidAttributeException(name);
+  // Returns attributes whose values are only obtained from `source` (and
+  // checked against `schema`) the first time one of them is read, e.g. so
+  // that a reader can keep them encoded until then.
+  public static Attributes deferred(AttributeSchema schema, Source source) {
+    Attributes attributes = new Attributes(schema, null);
+    attributes.source = source;
+    return attributes;
+  }
+
+  // Checks `data` against the attributes declared by `schema` and stores it
+  // by slot. Undeclared names are reported first, then missing attributes,
+  // then the first attribute (in declaration order) of the wrong type.
+  public static Attributes of(AttributeSchema schema, Map<String, Value> data)
+      throws UndeclaredAttributeException, InvalidAttributeException,
+      TypeMismatchException {
+    if (data.isEmpty() && schema.size() == 0) {
+      return empty;
+    }
+    Value[] values = new Value[schema.size()];
+    for (Map.Entry<String, Value> entry : data.entrySet()) {
+      int slot = schema.getSlot(entry.getKey());
+      if (slot == -1) {
+        throw new InvalidAttributeException(entry.getKey());
       }
+      values[slot] = entry.getValue();
     }
-    for (String name : typeNames) {
-      if (!attrNames.contains(name)) {
-        throw new UndeclaredAttributeException(name);
+    TypeMismatchException mismatch = null;
+    for (int slot = 0; slot < values.length; ++slot) {
+      if (values[slot] == null) {
+        throw new UndeclaredAttributeException(schema.getName(slot));
       }
+      TypeValue expectedType = values[slot].getType();
+      TypeValue actualType = schema.getType(slot);
+      if (mismatch == null && !expectedType.isSubtypeOf(actualType)) {
+        mismatch = new TypeMismatchException(expectedType, actualType);
+      }
+    }
+    if (mismatch != null) {
+      throw mismatch;
     }
+    return new Attributes(schema, values);
   }
 
-  private static void validateAttrTypes(Map<String, TypeValue> types,
-      Map<String, Value> data) throws TypeMismatchException {
-    for (Map.Entry<String, TypeValue> entry : types.entrySet()) {
-      String attrName = entry.getKey();
-      TypeValue expectedType = data.get(attrName).getType();
-      TypeValue actualType = entry.getValue();
-      if (!expectedType.isSubtypeOf(actualType)) {
-        throw new TypeMismatchException(expectedType, actualType);
-      }
-    }
+  public AttributeSchema getSchema() {
+    return schema;
   }
 
   public Value get(String attrName) throws UndeclaredAttributeException {
-    if (data.containsKey(attrName)) {
-      return data.get(attrName);
-    } else {
+    int slot = schema.getSlot(attrName);
+    if (slot == -1) {
       throw new UndeclaredAttributeException(attrName);
     }
+    return getValues()[slot];
+  }
+
+  private Value[] getValues() {
+    Value[] current = values;
+    return current != null ? current : load();
+  }
+
+  private synchronized Value[] load() {
+    if (values == null) {
+      Attributes loaded = source.read();
+      if (loaded.schema != schema) {
+        throw new IllegalStateException(
+            "deferred attributes were read for a different type");
+      }
+      values = loaded.getValues();
+      source = null;
+    }
+    return values;
   }
 }
@@ -7,14 +7,20 @@ import com.google.common.collect.ImmutableMap;
 
 public class ConnectionType extends TypeValue {
   private final ImmutableMap<String, TypeValue> attributes;
+  private final AttributeSchema attributeSchema;
   
   public ConnectionType(Map<String, TypeValue> attributes){
     this.attributes = ImmutableMap.copyOf(attributes);
+    this.attributeSchema = AttributeSchema.of(this.attributes);
   }
   
   public ImmutableMap<String, TypeValue> getAttributes() {
     return attributes;
   }
+
+  public AttributeSchema getAttributeSchema() {
+    return attributeSchema;
+  }
   
   @Override
   public void accept(ValueVisitor visitor) {
@@ -1,5 +1,6 @@
 package org.manifold.compiler;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 import java.util.Map;
@@ -27,8 +28,16 @@ public class ConnectionValue extends Value {
       Map<String, Value> attrs)
       throws UndeclaredAttributeException, InvalidAttributeException,
       TypeMismatchException {
+    this(type, from, to, Attributes.of(type.getAttributeSchema(), attrs));
+  }
+
+  // `attrs` must have been made for this connection type; see PortValue.
+  public ConnectionValue(ConnectionType type, PortValue from, PortValue to,
+      Attributes attrs) {
     super(type);
-    this.attributes = new Attributes(type.getAttributes(), attrs);
+    checkArgument(attrs.getSchema() == type.getAttributeSchema(),
+        "attributes were made for a different type");
+    this.attributes = attrs;
     this.portFrom = checkNotNull(from);
     this.portTo = checkNotNull(to);
     
@@ -15,7 +15,7 @@ public class ConstraintValue extends Value {
       throws UndeclaredAttributeException, InvalidAttributeException,
       TypeMismatchException {
     super(type);
-    this.attributes = new Attributes(type.getAttributes(), attrs);
+    this.attributes = Attributes.of(type.getAttributeSchema(), attrs);
   }
 
   @Override
@@ -2,12 +2,37 @@ package org.manifold.compiler;
 
 public class IntegerValue extends Value {
 
+  // Canonical instances for the integers most attributes hold.
+  private static final int CACHE_LOW = -128;
+  private static final int CACHE_HIGH = 1023;
+  private static final IntegerValue[] cache =
+      new IntegerValue[CACHE_HIGH - CACHE_LOW + 1];
+
+  static {
+    for (int i = 0; i < cache.length; ++i) {
+      cache[i] = new IntegerValue(CACHE_LOW + i);
+    }
+  }
+
+  // Returns a shared instance for small values and a new one otherwise.
+  // Integer values are immutable, so callers cannot tell the difference.
+  public static IntegerValue getInstance(int val) {
+    if (val >= CACHE_LOW && val <= CACHE_HIGH) {
+      return cache[val - CACHE_LOW];
+    }
+    return new IntegerValue(val);
+  }
+
   private final Integer val;
   public IntegerValue(Integer val){
     super(IntegerTypeValue.getInstance());
     this.val = val;
   }
 
+  public int toInteger() {
+    return val;
+  }
+
   @Override
   public boolean isElaborationtimeKnowable() {
     return true;
@@ -1,5 +1,6 @@
 package org.manifold.compiler;
 
+import java.io.File;
 import java.io.FileInputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -11,6 +12,10 @@ import java.util.Map;
 import org.antlr.v4.runtime.ANTLRInputStream;
 import org.antlr.v4.runtime.CommonTokenStream;
 import org.antlr.v4.runtime.tree.TerminalNode;
+import org.apache.commons.cli.BasicParser;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.OptionBuilder;
+import org.apache.commons.cli.Options;
 import org.manifold.compiler.back.digital.VHDLCodeGenerator;
 import org.manifold.compiler.front.Expression;
 import org.manifold.compiler.front.ExpressionGraph;
@@ -27,7 +32,9 @@ import org.manifold.compiler.front.VariableAssignmentExpression;
 import org.manifold.compiler.front.VariableIdentifier;
 import org.manifold.compiler.front.VariableNotDefinedException;
 import org.manifold.compiler.front.VariableReferenceExpression;
+import org.manifold.compiler.front.VariableResolver;
 import org.manifold.compiler.middle.Schematic;
+import org.manifold.compiler.middle.serialization.SchematicBinarySerializer;
 import org.manifold.compiler.middle.serialization.SchematicSerializer;
 import org.manifold.parser.ManifoldBaseVisitor;
 import org.manifold.parser.ManifoldLexer;
@@ -36,14 +43,35 @@ import org.manifold.parser.ManifoldParser.ExpressionContext;
 import org.manifold.parser.ManifoldParser.NamespacedIdentifierContext;
 
 import com.google.common.annotations.VisibleForTesting;
-import com.google.gson.JsonObject;
 
 public class Main {
 
+  @SuppressWarnings("static-access")
+  private static Options createOptions() {
+    Options options = new Options();
+    options.addOption(OptionBuilder
+        .withLongOpt("parallel-elaboration")
+        .withDescription(
+            "elaborate primitives and connections on all available cores")
+        .create());
+    options.addOption(OptionBuilder
+        .withLongOpt("binary-output")
+        .hasArg()
+        .withArgName("file")
+        .withDescription(
+            "also write the schematic to <file> in the binary format")
+        .create());
+    return options;
+  }
+
   public static void main(String[] args) throws Exception {
 
+    CommandLine cmd = new BasicParser().parse(createOptions(), args);
+    String inputFile = cmd.getArgs()[0];
+    boolean parallelElaboration = cmd.hasOption("parallel-elaboration");
+
     ManifoldLexer lexer = new ManifoldLexer(new ANTLRInputStream(
-        new FileInputStream(args[0])));
+        new FileInputStream(inputFile)));
 
      // Get a list of matched tokens
     CommonTokenStream tokens = new CommonTokenStream(lexer);
@@ -68,7 +96,7 @@ public class Main {
     System.out.println();
     
     Scope toplevel = new Scope();
-    Schematic schematic = new Schematic(args[0]);
+    Schematic schematic = new Schematic(inputFile);
     
     // mock-up: digital circuits primitives
     // (to be removed when core library and namespaces are implemented)
@@ -97,37 +125,46 @@ public class Main {
       }
     }
     
+    // bind references to top-level variables once, now that all of them
+    // are defined
+    new VariableResolver(toplevel).resolve(expressions);
+
     System.out.println("top-level identifiers:");
     for (VariableIdentifier id : toplevel.getSymbolIdentifiers()) {
       System.out.println(id);
     }
    
-    ExpressionGraph exprGraph = new ExpressionGraph(toplevel);
+    // variables are resolved while the graph is built,
+    // so there is no separate optimizeOutVariables() pass
+    ExpressionGraph exprGraph = new ExpressionGraph(toplevel, true);
     exprGraph.buildFrom(expressions);
     exprGraph.removeUnconnectedEdges();
-    exprGraph.optimizeOutVariables();
     
     System.out.println("expression graph edges:");
     for (String s : exprGraph.getPrintableEdges()) {
       System.out.println(s);
     }
     
-    exprGraph.elaboratePrimitives();
+    exprGraph.elaboratePrimitives(parallelElaboration);
     
     System.out.println("instantiated primitives:");
     for (String s : exprGraph.getPrintableInstances()) {
       System.out.println(s);
     }
     
-    exprGraph.elaborateConnections(schematic);
+    exprGraph.elaborateConnections(schematic, parallelElaboration);
     
     exprGraph.writeSchematic(schematic);
     
     SchematicSerializer ser = new SchematicSerializer();
-    JsonObject serializationResult = ser.serialize(schematic);
-    System.out.println(serializationResult);
+    ser.serialize(schematic, System.out);
+    System.out.println();
+    if (cmd.hasOption("binary-output")) {
+      new SchematicBinarySerializer().serialize(schematic,
+          new File(cmd.getOptionValue("binary-output")));
+    }
     
-    VHDLCodeGenerator codegen = new VHDLCodeGenerator(schematic);
+    VHDLCodeGenerator codegen = new VHDLCodeGenerator(schematic.freeze());
     codegen.generateOutputProducts();
   }
   
@@ -219,7 +256,7 @@ public class Main {
       org.manifold.compiler.MultipleDefinitionException {
     setupDigitalTypes(schematic);
     // inputPin: unit -> Bool
-    FunctionTypeValue inputPinPrimitiveType = new FunctionTypeValue(
+    FunctionTypeValue inputPinPrimitiveType = FunctionTypeValue.getInstance(
         NilTypeValue.getInstance(), BooleanTypeValue.getInstance());
     PrimitiveFunctionValue inputPinPrimitive = new PrimitiveFunctionValue(
         "inputPin", inputPinPrimitiveType, schematic.getNodeType("inputPin"));
@@ -230,7 +267,7 @@ public class Main {
     scope.assignVariable(inputPinIdentifier, 
         new LiteralExpression(inputPinPrimitive));
     // outputPin: Bool -> unit
-    FunctionTypeValue outputPinPrimitiveType = new FunctionTypeValue(
+    FunctionTypeValue outputPinPrimitiveType = FunctionTypeValue.getInstance(
         BooleanTypeValue.getInstance(), NilTypeValue.getInstance());
     PrimitiveFunctionValue outputPinPrimitive = new PrimitiveFunctionValue(
         "outputPin", outputPinPrimitiveType, 
@@ -242,8 +279,8 @@ public class Main {
     scope.assignVariable(outputPinIdentifier, 
         new LiteralExpression(outputPinPrimitive));
     // and: (Bool, Bool) -> Bool
-    FunctionTypeValue andPrimitiveType = new FunctionTypeValue(
-        new TupleTypeValue(Arrays.asList(new TypeValue[]{
+    FunctionTypeValue andPrimitiveType = FunctionTypeValue.getInstance(
+        TupleTypeValue.getInstance(Arrays.asList(new TypeValue[]{
             BooleanTypeValue.getInstance(), BooleanTypeValue.getInstance()
         })), BooleanTypeValue.getInstance());
     PrimitiveFunctionValue andPrimitive = new PrimitiveFunctionValue(
@@ -254,8 +291,8 @@ public class Main {
         new LiteralExpression(andPrimitiveType));
     scope.assignVariable(andIdentifier, new LiteralExpression(andPrimitive));
     // or: (Bool, Bool) -> Bool
-    FunctionTypeValue orPrimitiveType = new FunctionTypeValue(
-        new TupleTypeValue(Arrays.asList(new TypeValue[]{
+    FunctionTypeValue orPrimitiveType = FunctionTypeValue.getInstance(
+        TupleTypeValue.getInstance(Arrays.asList(new TypeValue[]{
             BooleanTypeValue.getInstance(), BooleanTypeValue.getInstance()
         })), BooleanTypeValue.getInstance());
     PrimitiveFunctionValue orPrimitive = new PrimitiveFunctionValue(
@@ -266,7 +303,7 @@ public class Main {
         new LiteralExpression(orPrimitiveType));
     scope.assignVariable(orIdentifier, new LiteralExpression(orPrimitive));
     // not: Bool -> Bool
-    FunctionTypeValue notPrimitiveType = new FunctionTypeValue(
+    FunctionTypeValue notPrimitiveType = FunctionTypeValue.getInstance(
         BooleanTypeValue.getInstance(), BooleanTypeValue.getInstance());
     PrimitiveFunctionValue notPrimitive = new PrimitiveFunctionValue(
         "not", notPrimitiveType, schematic.getNodeType("inputPin"));
@@ -313,7 +350,7 @@ class ExpressionVisitor extends ManifoldBaseVisitor<Expression> {
     for (Expression e : values) {
       types.add(e.getType(emptyScope));
     }
-    TupleTypeValue anonymousTupleType = new TupleTypeValue(types);
+    TupleTypeValue anonymousTupleType = TupleTypeValue.getInstance(types);
     // now we build a TupleValue from these subexpressions
     return new LiteralExpression(new TupleValue(anonymousTupleType, values));
   }
@@ -337,7 +374,7 @@ class ExpressionVisitor extends ManifoldBaseVisitor<Expression> {
   public Expression visitTerminal(TerminalNode node) {
     if (node.getSymbol().getType() == ManifoldLexer.INTEGER_VALUE) {
       return new LiteralExpression(
-          new IntegerValue(Integer.valueOf(node.getText()))
+          IntegerValue.getInstance(Integer.parseInt(node.getText()))
       );
       
     } else if (node.getSymbol().getType() == ManifoldLexer.BOOLEAN_VALUE) {
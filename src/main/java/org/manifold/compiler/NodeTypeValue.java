@@ -1,28 +1,112 @@
 package org.manifold.compiler;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import com.google.common.collect.ImmutableMap;
 
 public class NodeTypeValue extends TypeValue {
 
   private final Map<String, TypeValue> attributes;
+  private final AttributeSchema attributeSchema;
   private final Map<String, PortTypeValue> ports;
+  // The port layout shared by every node of this type: ports are numbered
+  // in declaration order, and NodeValue keeps its ports in an array
+  // indexed by this number.
+  private final String[] portNames;
+  private final PortTypeValue[] portTypes;
+  private final Map<String, Integer> portIndices;
+  // For each port type that has been asked about, the names of the ports
+  // whose type is a subtype of it, in declaration order.
+  // Entries are built on first use and never change afterwards.
+  private final ConcurrentMap<PortTypeValue, String[]> portsByType =
+      new ConcurrentHashMap<>();
 
   public NodeTypeValue(
       Map<String, TypeValue> attributes,
       Map<String, PortTypeValue> ports) {
     this.attributes = ImmutableMap.copyOf(attributes);
+    this.attributeSchema = AttributeSchema.of(this.attributes);
     this.ports = ImmutableMap.copyOf(ports);
+    this.portNames = new String[ports.size()];
+    this.portTypes = new PortTypeValue[ports.size()];
+    ImmutableMap.Builder<String, Integer> indices = ImmutableMap.builder();
+    int index = 0;
+    for (Map.Entry<String, PortTypeValue> port : this.ports.entrySet()) {
+      portNames[index] = port.getKey();
+      portTypes[index] = port.getValue();
+      indices.put(port.getKey(), index);
+      index += 1;
+    }
+    this.portIndices = indices.build();
   }
   
   public Map<String, TypeValue> getAttributes() {
     return this.attributes;
   }
 
+  public AttributeSchema getAttributeSchema() {
+    return attributeSchema;
+  }
+
   public Map<String, PortTypeValue> getPorts() {
     return this.ports;
   }
+
+  public int getPortCount() {
+    return portNames.length;
+  }
+
+  // Returns the position of the named port in declaration order, or -1 if
+  // this type has no such port.
+  public int getPortIndex(String portName) {
+    Integer index = portIndices.get(portName);
+    return index == null ? -1 : index;
+  }
+
+  public String getPortName(int index) {
+    return portNames[index];
+  }
+
+  public PortTypeValue getPortType(int index) {
+    return portTypes[index];
+  }
+
+  public int getNumberOfPortsOfType(PortTypeValue portType) {
+    return getPortsOfType(portType).length;
+  }
+
+  // Returns the name of the n-th port (counting from 0, in declaration
+  // order) whose type is a subtype of portType.
+  public String getNthPortOfType(PortTypeValue portType, int n) {
+    String[] ofType = getPortsOfType(portType);
+    if (n < 0 || n >= ofType.length) {
+      throw new ArrayIndexOutOfBoundsException(n);
+    }
+    return ofType[n];
+  }
+
+  private String[] getPortsOfType(PortTypeValue portType) {
+    String[] ofType = portsByType.get(portType);
+    if (ofType == null) {
+      List<String> matches = new ArrayList<>();
+      for (Map.Entry<String, PortTypeValue> port : ports.entrySet()) {
+        if (port.getValue().isSubtypeOf(portType)) {
+          matches.add(port.getKey());
+        }
+      }
+      ofType = matches.toArray(new String[matches.size()]);
+      // if another thread got here first, both arrays are identical
+      String[] existing = portsByType.putIfAbsent(portType, ofType);
+      if (existing != null) {
+        ofType = existing;
+      }
+    }
+    return ofType;
+  }
   
   @Override
   public void accept(ValueVisitor visitor) {
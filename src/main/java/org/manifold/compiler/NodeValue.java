@@ -1,19 +1,26 @@
 package org.manifold.compiler;
 
-import java.util.HashMap;
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
 
 import org.manifold.compiler.middle.SchematicException;
 
-import com.google.common.collect.ImmutableMap;
-
 public class NodeValue extends Value {
 
   private final Attributes attributes;
-  private final Map<String, PortValue> ports;
+  // ports[i] is the port at index i of the node type's port layout
+  private final PortValue[] ports;
 
+  // Returns a read-only view of the ports. The view has no state of its
+  // own, so making one copies nothing.
   public Map<String, PortValue> getPorts() {
-    return ImmutableMap.copyOf(ports);
+    return new PortMap();
   }
 
   public Value getAttribute(String attrName)
@@ -23,36 +30,63 @@ public class NodeValue extends Value {
 
   public PortValue getPort(String portName)
       throws UndeclaredIdentifierException {
-    if (ports.containsKey(portName)) {
-      return ports.get(portName);
-    } else {
+    int index = getNodeType().getPortIndex(portName);
+    if (index == -1) {
       throw new UndeclaredIdentifierException(portName);
     }
+    return ports[index];
+  }
+
+  private NodeTypeValue getNodeType() {
+    return (NodeTypeValue) getType();
   }
 
   public NodeValue(NodeTypeValue type, Map<String, Value> attrs,
       Map<String, Map<String, Value>> portAttrMaps) throws SchematicException {
     super(type);
-    this.attributes = new Attributes(type.getAttributes(), attrs);
-    this.ports = new HashMap<>();
-
-    final Map<String, PortTypeValue> portTypes = type.getPorts();
-    if (portTypes != null) {
-      for (String portName : portAttrMaps.keySet()) {
-        if (!portTypes.containsKey(portName)) {
-          throw new UndeclaredIdentifierException(portName);
-        }
+    this.attributes = Attributes.of(type.getAttributeSchema(), attrs);
+    this.ports = new PortValue[type.getPortCount()];
+
+    checkPortNames(type, portAttrMaps.keySet());
+
+    for (int i = 0; i < ports.length; ++i) {
+      String portName = type.getPortName(i);
+      Map<String, Value> portAttrs = portAttrMaps.get(portName);
+      if (portAttrs == null) {
+        throw new InvalidIdentifierException(portName);
+      }
+      ports[i] = new PortValue(type.getPortType(i), this, portAttrs);
+    }
+  }
+
+  // Takes attributes already made for the node type and for each port's
+  // type (see PortValue), so that identically configured nodes can share
+  // them.
+  public NodeValue(NodeTypeValue type, Attributes attrs,
+      Map<String, Attributes> portAttrs) throws SchematicException {
+    super(type);
+    checkArgument(attrs.getSchema() == type.getAttributeSchema(),
+        "attributes were made for a different type");
+    this.attributes = attrs;
+    this.ports = new PortValue[type.getPortCount()];
+
+    checkPortNames(type, portAttrs.keySet());
+
+    for (int i = 0; i < ports.length; ++i) {
+      String portName = type.getPortName(i);
+      Attributes portAttributes = portAttrs.get(portName);
+      if (portAttributes == null) {
+        throw new InvalidIdentifierException(portName);
       }
+      ports[i] = new PortValue(type.getPortType(i), this, portAttributes);
+    }
+  }
 
-      Map<String, PortTypeValue> ports = type.getPorts();
-      for (Map.Entry<String, PortTypeValue> portEntry : ports.entrySet()) {
-        String portName = portEntry.getKey();
-        PortTypeValue portType = portEntry.getValue();
-        Map<String, Value> portAttrs = portAttrMaps.get(portName);
-        if (portAttrs == null) {
-          throw new InvalidIdentifierException(portName);
-        }
-        this.ports.put(portName, new PortValue(portType, this, portAttrs));
+  private static void checkPortNames(NodeTypeValue type,
+      Set<String> portNames) throws UndeclaredIdentifierException {
+    for (String portName : portNames) {
+      if (type.getPortIndex(portName) == -1) {
+        throw new UndeclaredIdentifierException(portName);
       }
     }
   }
@@ -71,5 +105,66 @@ public class NodeValue extends Value {
   public void accept(ValueVisitor visitor) {
     visitor.visit(this);
   }
-  
+
+  // Read-only map from port name to port, in declaration order.
+  private class PortMap extends AbstractMap<String, PortValue> {
+    @Override
+    public int size() {
+      return ports.length;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+      return key instanceof String
+          && getNodeType().getPortIndex((String) key) != -1;
+    }
+
+    @Override
+    public PortValue get(Object key) {
+      if (!(key instanceof String)) {
+        return null;
+      }
+      int index = getNodeType().getPortIndex((String) key);
+      return index == -1 ? null : ports[index];
+    }
+
+    @Override
+    public Set<Map.Entry<String, PortValue>> entrySet() {
+      return new AbstractSet<Map.Entry<String, PortValue>>() {
+        @Override
+        public int size() {
+          return ports.length;
+        }
+
+        @Override
+        public Iterator<Map.Entry<String, PortValue>> iterator() {
+          return new Iterator<Map.Entry<String, PortValue>>() {
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() {
+              return next < ports.length;
+            }
+
+            @Override
+            public Map.Entry<String, PortValue> next() {
+              if (!hasNext()) {
+                throw new NoSuchElementException();
+              }
+              Map.Entry<String, PortValue> entry = new SimpleImmutableEntry<>(
+                  getNodeType().getPortName(next), ports[next]);
+              next += 1;
+              return entry;
+            }
+
+            @Override
+            public void remove() {
+              throw new UnsupportedOperationException();
+            }
+          };
+        }
+      };
+    }
+  }
+
 }
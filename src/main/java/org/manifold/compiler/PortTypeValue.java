@@ -6,14 +6,20 @@ import com.google.common.collect.ImmutableMap;
 
 public class PortTypeValue extends TypeValue {
   private final Map<String, TypeValue> attributes;
+  private final AttributeSchema attributeSchema;
   
   public PortTypeValue(Map<String, TypeValue> attributes){
     this.attributes = ImmutableMap.copyOf(attributes);
+    this.attributeSchema = AttributeSchema.of(this.attributes);
   }
   
   public Map<String, TypeValue> getAttributes() {
     return this.attributes;
   }
+
+  public AttributeSchema getAttributeSchema() {
+    return attributeSchema;
+  }
   
   @Override
   public void accept(ValueVisitor visitor) {
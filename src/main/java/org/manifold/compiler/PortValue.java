@@ -1,5 +1,6 @@
 package org.manifold.compiler;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 import java.util.Map;
@@ -22,8 +23,18 @@ public class PortValue extends Value {
       Map<String, Value> attrMap) throws UndeclaredAttributeException,
       InvalidAttributeException, TypeMismatchException {
 
+    this(type, parent, Attributes.of(type.getAttributeSchema(), attrMap));
+  }
+
+  // `attributes` must have been made for this port type, e.g. by
+  // Attributes.of(type.getAttributeSchema(), ...); they can then be shared
+  // with other ports of the type.
+  public PortValue(PortTypeValue type, NodeValue parent,
+      Attributes attributes) {
     super(type);
-    this.attributes = new Attributes(type.getAttributes(), attrMap);
+    checkArgument(attributes.getSchema() == type.getAttributeSchema(),
+        "attributes were made for a different type");
+    this.attributes = attributes;
     this.parent = checkNotNull(parent);
   }
 
@@ -9,6 +9,11 @@ public class StringValue extends Value {
     this.val = val;
   }
 
+  @Override
+  public String toString() {
+    return val;
+  }
+
   @Override
   public boolean isElaborationtimeKnowable() {
     return true;
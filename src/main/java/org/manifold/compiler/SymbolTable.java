@@ -0,0 +1,164 @@
+package org.manifold.compiler;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The compiler-wide table of interned names. Each distinct name gets a
+ * small integer symbol, numbered densely from 0 in order of first use, and
+ * a single canonical String. Code that sees the same names over and over
+ * (such as the front end's identifiers) can key per-name data on the
+ * symbol with a plain array, and keep one copy of each name.
+ *
+ * Lookups never lock: the table is a hash table of immutable chains whose
+ * buckets are published through an AtomicReferenceArray. Adding a new name
+ * is synchronized.
+ *
+ * Symbols are never released, so the compiler-wide table (getInstance())
+ * grows with the number of distinct names the compiler has seen. A pass
+ * that interns many short-lived names can make a table of its own, which
+ * is freed along with the pass.
+ */
+public class SymbolTable {
+
+  private static final SymbolTable instance = new SymbolTable();
+
+  public static SymbolTable getInstance() {
+    return instance;
+  }
+
+  private static class Entry {
+    private final String name;
+    private final int hash;
+    private final int symbol;
+    private final Entry next;
+
+    public Entry(String name, int hash, int symbol, Entry next) {
+      this.name = name;
+      this.hash = hash;
+      this.symbol = symbol;
+      this.next = next;
+    }
+  }
+
+  private volatile AtomicReferenceArray<Entry> buckets =
+      new AtomicReferenceArray<>(256);
+  // names[symbol]; only grows, and an entry is written before the symbol
+  // is published through a bucket
+  private volatile String[] names = new String[256];
+  private int size = 0;
+
+  // Returns the symbol for `name`, adding it if it is new.
+  public int intern(String name) {
+    return intern(name, 0, name.length());
+  }
+
+  // Returns the symbol for name.subSequence(start, end), adding it if it is
+  // new; nothing is allocated unless the name is new.
+  public int intern(CharSequence name, int start, int end) {
+    int hash = hash(name, start, end);
+    int symbol = find(buckets, name, start, end, hash);
+    if (symbol != -1) {
+      return symbol;
+    }
+    return add(name.subSequence(start, end).toString(), hash);
+  }
+
+  // Returns the symbol for `name`, or -1 if it has never been interned.
+  public int lookup(String name) {
+    return find(buckets, name, 0, name.length(),
+        hash(name, 0, name.length()));
+  }
+
+  // Returns the canonical string for a symbol.
+  public String getName(int symbol) {
+    return names[symbol];
+  }
+
+  // Returns the canonical copy of `name`.
+  public String canonical(String name) {
+    return getName(intern(name));
+  }
+
+  // Returns the canonical copy of name.subSequence(start, end).
+  public String canonical(CharSequence name, int start, int end) {
+    return getName(intern(name, start, end));
+  }
+
+  // The number of symbols so far; every symbol is less than this.
+  public synchronized int size() {
+    return size;
+  }
+
+  private synchronized int add(String name, int hash) {
+    // someone else may have added it since we looked
+    int symbol = find(buckets, name, 0, name.length(), hash);
+    if (symbol != -1) {
+      return symbol;
+    }
+    symbol = size;
+    if (symbol == names.length) {
+      names = Arrays.copyOf(names, symbol * 2);
+    }
+    names[symbol] = name;
+    size += 1;
+    if (size > buckets.length() * 3 / 4) {
+      rehash();
+    }
+    AtomicReferenceArray<Entry> table = buckets;
+    int b = hash & (table.length() - 1);
+    table.set(b, new Entry(name, hash, symbol, table.get(b)));
+    return symbol;
+  }
+
+  // Called with the lock held. Readers still using the old table see
+  // every name that was in it; a name added after the switch is found in
+  // the new table, or by add() rechecking under the lock.
+  private void rehash() {
+    AtomicReferenceArray<Entry> old = buckets;
+    AtomicReferenceArray<Entry> table =
+        new AtomicReferenceArray<>(old.length() * 2);
+    int mask = table.length() - 1;
+    for (int b = 0; b < old.length(); ++b) {
+      for (Entry e = old.get(b); e != null; e = e.next) {
+        int nb = e.hash & mask;
+        table.set(nb, new Entry(e.name, e.hash, e.symbol, table.get(nb)));
+      }
+    }
+    buckets = table;
+  }
+
+  private static int find(AtomicReferenceArray<Entry> table,
+      CharSequence name, int start, int end, int hash) {
+    for (Entry e = table.get(hash & (table.length() - 1)); e != null;
+        e = e.next) {
+      if (e.hash == hash && regionEquals(e.name, name, start, end)) {
+        return e.symbol;
+      }
+    }
+    return -1;
+  }
+
+  private static boolean regionEquals(String s, CharSequence name,
+      int start, int end) {
+    if (s.length() != end - start) {
+      return false;
+    }
+    for (int i = 0; i < s.length(); ++i) {
+      if (s.charAt(i) != name.charAt(start + i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // Same as String.hashCode(), spread so that low bits pick buckets well.
+  private static int hash(CharSequence name, int start, int end) {
+    int h = 0;
+    for (int i = start; i < end; ++i) {
+      h = 31 * h + name.charAt(i);
+    }
+    return h ^ (h >>> 16);
+  }
+
+}
@@ -1,5 +1,7 @@
 package org.manifold.compiler;
 
+import java.util.Arrays;
+
 public abstract class TypeValue extends Value {
 
  /*
@@ -13,7 +15,13 @@ public abstract class TypeValue extends Value {
   *
   *   private abstract TypeValue();
   */
-  
+
+  // The chain of supertypes of this type, from the root (the type whose
+  // supertype is itself, i.e. TypeTypeValue) down to this type, so that
+  // ancestors[d] is the ancestor at depth d. Built on first use; every
+  // thread builds the same chain, so a race only costs a copy.
+  private volatile TypeValue[] ancestors = null;
+
   public TypeValue() {
     super(null);
   }
@@ -28,12 +36,35 @@ public abstract class TypeValue extends Value {
   }
 
   public boolean isSubtypeOf(TypeValue type) {
-    if (this == type) {
-      return true;
-    } else {
-      // TypeTypeValue overrides this method for base case behaviour.
-      return getSupertype().isSubtypeOf(type);
+    return this == type || hasAncestor(type);
+  }
+
+  // True if `type` is on this type's supertype chain (including this type
+  // itself). Takes constant time once both chains have been built: `type`
+  // can only be an ancestor at its own depth.
+  protected final boolean hasAncestor(TypeValue type) {
+    if (type == null) {
+      return false;
+    }
+    TypeValue[] mine = getAncestors();
+    int depth = type.getAncestors().length - 1;
+    return depth < mine.length && mine[depth] == type;
+  }
+
+  private TypeValue[] getAncestors() {
+    TypeValue[] chain = ancestors;
+    if (chain == null) {
+      TypeValue supertype = getSupertype();
+      if (supertype == null || supertype == this) {
+        chain = new TypeValue[] {this};
+      } else {
+        TypeValue[] above = supertype.getAncestors();
+        chain = Arrays.copyOf(above, above.length + 1);
+        chain[above.length] = this;
+      }
+      ancestors = chain;
     }
+    return chain;
   }
 
   @Override
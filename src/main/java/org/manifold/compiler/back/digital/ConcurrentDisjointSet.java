@@ -0,0 +1,62 @@
+package org.manifold.compiler.back.digital;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+// A lock-free disjoint-set forest over the integers 0..size-1 that
+// any number of threads may union and query at the same time.
+// All updates are single compare-and-set operations on the parent array.
+// A union always links the larger root underneath the smaller one, so
+// every parent pointer goes to a smaller index, and once all unions are
+// done the representative of each set is its smallest element,
+// no matter which thread did which union in what order.
+
+public class ConcurrentDisjointSet {
+  private final AtomicIntegerArray parent;
+
+  public ConcurrentDisjointSet(int size) {
+    parent = new AtomicIntegerArray(size);
+    for (int i = 0; i < size; ++i) {
+      parent.set(i, i);
+    }
+  }
+
+  public int size() {
+    return parent.length();
+  }
+
+  // Returns the current representative of the set containing x.
+  public int find(int x) {
+    while (true) {
+      int p = parent.get(x);
+      if (p == x) {
+        return x;
+      }
+      int grandparent = parent.get(p);
+      if (grandparent != p) {
+        // path halving; if another thread got here first, that's fine,
+        // since parent pointers only ever move closer to the root
+        parent.compareAndSet(x, p, grandparent);
+      }
+      x = grandparent;
+    }
+  }
+
+  // Merges the sets containing a and b.
+  // Returns false if they were already in the same set.
+  public boolean union(int a, int b) {
+    while (true) {
+      int rootA = find(a);
+      int rootB = find(b);
+      if (rootA == rootB) {
+        return false;
+      }
+      int low = Math.min(rootA, rootB);
+      int high = Math.max(rootA, rootB);
+      // only succeeds if `high` is still a root; otherwise retry
+      if (parent.compareAndSet(high, high, low)) {
+        return true;
+      }
+    }
+  }
+
+}
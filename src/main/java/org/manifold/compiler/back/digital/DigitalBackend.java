@@ -1,7 +1,10 @@
 package org.manifold.compiler.back.digital;
 
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.Arrays;
 import java.util.List;
 
@@ -20,11 +23,9 @@ import org.manifold.compiler.OptionError;
 import org.manifold.compiler.UndefinedBehaviourError;
 import org.manifold.compiler.middle.Schematic;
 import org.manifold.compiler.middle.SchematicException;
+import org.manifold.compiler.middle.serialization.SchematicBinaryDeserializer;
 import org.manifold.compiler.middle.serialization.SchematicDeserializer;
 
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
-
 public class DigitalBackend {
 
   private static Logger log = LogManager.getLogger("DigitalBackend");
@@ -99,17 +100,97 @@ public class DigitalBackend {
     }
   }
 
+  boolean parallelNetlist = false;
+
+  @SuppressWarnings("static-access")
+  private void createOptionParallelNetlist() {
+    Option parallel = OptionBuilder
+        .withLongOpt("parallel-netlist")
+        .withDescription("build the netlist on all available cores")
+        .create();
+    options.addOption(parallel);
+  }
+
+  private void collectOptionParallelNetlist(CommandLine cmd) {
+    if (cmd.hasOption("parallel-netlist")) {
+      parallelNetlist = true;
+    }
+  }
+
+  boolean parallelLoad = false;
+
+  @SuppressWarnings("static-access")
+  private void createOptionParallelLoad() {
+    Option parallel = OptionBuilder
+        .withLongOpt("parallel-load")
+        .withDescription("read the input schematic on all available cores")
+        .create();
+    options.addOption(parallel);
+  }
+
+  private void collectOptionParallelLoad(CommandLine cmd) {
+    if (cmd.hasOption("parallel-load")) {
+      parallelLoad = true;
+    }
+  }
+
+  boolean binaryInput = false;
+
+  @SuppressWarnings("static-access")
+  private void createOptionBinaryInput() {
+    Option binary = OptionBuilder
+        .withLongOpt("binary")
+        .withDescription("read the input schematic in binary format")
+        .create();
+    options.addOption(binary);
+  }
+
+  private void collectOptionBinaryInput(CommandLine cmd) {
+    if (cmd.hasOption("binary")) {
+      binaryInput = true;
+    }
+  }
+
+  boolean lazyLoad = false;
+
+  @SuppressWarnings("static-access")
+  private void createOptionLazyLoad() {
+    Option lazy = OptionBuilder
+        .withLongOpt("lazy")
+        .withDescription("with --binary, decode the input's records "
+            + "on demand instead of all up front")
+        .create();
+    options.addOption(lazy);
+  }
+
+  private void collectOptionLazyLoad(CommandLine cmd) {
+    if (cmd.hasOption("lazy")) {
+      if (!cmd.hasOption("binary")) {
+        throw new OptionError("--lazy requires --binary");
+      }
+      lazyLoad = true;
+    }
+  }
+
   private void createOptionDefinitions() {
     options = new Options();
     createOptionTargetHDL();
     createOptionOutputDirectory();
     createOptionNoChecks();
+    createOptionParallelNetlist();
+    createOptionParallelLoad();
+    createOptionBinaryInput();
+    createOptionLazyLoad();
   }
 
   private void collectOptions(CommandLine cmd) {
     collectOptionTargetHDL(cmd);
     collectOptionOutputDirectory(cmd);
     collectOptionNoChecks(cmd);
+    collectOptionParallelNetlist(cmd);
+    collectOptionParallelLoad(cmd);
+    collectOptionBinaryInput(cmd);
+    collectOptionLazyLoad(cmd);
   }
 
   private List<String> inputs;
@@ -136,16 +217,22 @@ public class DigitalBackend {
     if (inputs.size() > 1) {
       throw new UndefinedBehaviourError("cannot compile from multiple inputs");
     }
-    SchematicDeserializer deserializer = new SchematicDeserializer();
-    FileReader inFile;
+    Schematic schematic;
     try {
-      inFile = new FileReader(inputs.get(0));
+      // the schematic is only read from here on; a lazily read one is
+      // read-only already, and freezing it would read every record
+      schematic = readSchematic(inputs.get(0));
+      if (!lazyLoad) {
+        schematic = schematic.freeze();
+      }
     } catch (FileNotFoundException e) {
       log.error("input file '" + inputs.get(0) + "' not found");
       return;
+    } catch (IOException e) {
+      log.error("error while reading '" + inputs.get(0) + "': "
+          + e.getMessage());
+      return;
     }
-    JsonObject inputJson = new JsonParser().parse(inFile).getAsJsonObject();
-    Schematic schematic = deserializer.deserialize(inputJson);
     switch (targetHDL) {
         case VHDL: {
           VHDLCodeGenerator vhdlGen = new VHDLCodeGenerator(schematic);
@@ -155,11 +242,33 @@ public class DigitalBackend {
           if (noChecks) {
             vhdlGen.setRunChecks(false);
           }
+          if (parallelNetlist) {
+            vhdlGen.setParallelNetlist(true);
+          }
           vhdlGen.generateOutputProducts();
         } // end case VHDL
     }
   }
 
+  private Schematic readSchematic(String filename)
+      throws IOException, SchematicException {
+    if (binaryInput) {
+      File inFile = new File(filename);
+      if (!inFile.isFile()) {
+        throw new FileNotFoundException(filename);
+      }
+      if (lazyLoad) {
+        return new SchematicBinaryDeserializer().deserializeLazily(inFile);
+      }
+      return new SchematicBinaryDeserializer().deserialize(inFile);
+    }
+    SchematicDeserializer deserializer = new SchematicDeserializer();
+    deserializer.setParallel(parallelLoad);
+    try (FileReader inFile = new FileReader(filename)) {
+      return deserializer.deserialize(inFile);
+    }
+  }
+
   public static void main(String[] args) {
     try {
       DigitalBackend backend = new DigitalBackend(args);
@@ -172,6 +281,9 @@ public class DigitalBackend {
       log.error("error while building schematic: " + e.getMessage());
     } catch (CodeGenerationError e) {
       log.error("error while generating code: " + e.getMessage());
+    } catch (UncheckedIOException e) {
+      // a lazily read input can turn out to be corrupt at any point
+      log.error("error while reading input: " + e.getCause().getMessage());
     }
   }
 
@@ -0,0 +1,60 @@
+package org.manifold.compiler.back.digital;
+
+// A disjoint-set forest ("union-find") over the integers 0..size-1.
+// Netlist construction uses this to group ports into nets: every connection
+// unions its two ports, and each resulting set is exactly one net.
+// Path compression and union by rank keep every operation
+// effectively constant-time, so building the sets is near-linear
+// in the number of connections.
+
+public class DisjointSet {
+  private final int[] parent;
+  private final byte[] rank;
+
+  public DisjointSet(int size) {
+    parent = new int[size];
+    rank = new byte[size];
+    for (int i = 0; i < size; ++i) {
+      parent[i] = i;
+    }
+  }
+
+  public int size() {
+    return parent.length;
+  }
+
+  // Returns the representative element of the set containing x.
+  public int find(int x) {
+    int root = x;
+    while (parent[root] != root) {
+      root = parent[root];
+    }
+    // path compression: point everything we walked over directly at the root
+    while (parent[x] != root) {
+      int next = parent[x];
+      parent[x] = root;
+      x = next;
+    }
+    return root;
+  }
+
+  // Merges the sets containing a and b.
+  // Returns false if they were already in the same set.
+  public boolean union(int a, int b) {
+    int rootA = find(a);
+    int rootB = find(b);
+    if (rootA == rootB) {
+      return false;
+    }
+    if (rank[rootA] < rank[rootB]) {
+      parent[rootA] = rootB;
+    } else if (rank[rootA] > rank[rootB]) {
+      parent[rootB] = rootA;
+    } else {
+      parent[rootB] = rootA;
+      rank[rootA] += 1;
+    }
+    return true;
+  }
+
+}
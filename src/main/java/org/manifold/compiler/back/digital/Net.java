@@ -1,13 +1,12 @@
 package org.manifold.compiler.back.digital;
 
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
 
 import org.manifold.compiler.PortValue;
 import org.manifold.compiler.UndefinedBehaviourError;
 
-import com.google.common.collect.ImmutableSet;
-
 // In digital design, a "net" is a wire that connects multiple ports together.
 // Because the connections supported by the compiler are
 // traditional graph edges, which connect only two ports at a time,
@@ -15,28 +14,52 @@ import com.google.common.collect.ImmutableSet;
 // is connected to two or more other ports to supply them with signal.
 
 public class Net {
-  private String name;
+  private final String name;
 
   public String getName() {
     return name;
   }
 
+  // Nets built by a Netlist are read-only views into the netlist's compact
+  // port storage; nets built directly own a (mutable) set of their ports.
+  private final Set<PortValue> ownPorts;
+  private final Set<PortValue> connectedPorts;
+
+  // index of this net in its netlist, or -1 if it is not part of one
+  private final int id;
+
+  int getID() {
+    return id;
+  }
+
   public Net(String name) {
     this.name = name;
+    this.id = -1;
+    this.ownPorts = new HashSet<>();
+    this.connectedPorts = Collections.unmodifiableSet(ownPorts);
   }
 
-  private Set<PortValue> connectedPorts = new HashSet<>();
+  Net(String name, int id, Set<PortValue> connectedPorts) {
+    this.name = name;
+    this.id = id;
+    this.ownPorts = null;
+    this.connectedPorts = connectedPorts;
+  }
 
   public Set<PortValue> getConnectedPorts() {
-    return ImmutableSet.copyOf(connectedPorts);
+    return connectedPorts;
   }
 
   public void addPort(PortValue port) {
-    if (connectedPorts.contains(port)) {
+    if (ownPorts == null) {
+      throw new UnsupportedOperationException(
+          "cannot add ports to a net that belongs to a netlist");
+    }
+    if (ownPorts.contains(port)) {
       throw new UndefinedBehaviourError(
           "port is connected to the same net twice");
     } else {
-      connectedPorts.add(port);
+      ownPorts.add(port);
     }
   }
 }
@@ -1,8 +1,17 @@
 package org.manifold.compiler.back.digital;
 
+import java.util.AbstractList;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import org.manifold.compiler.ConnectionType;
 import org.manifold.compiler.ConnectionValue;
@@ -12,40 +21,145 @@ import org.manifold.compiler.TypeMismatchException;
 import org.manifold.compiler.UndeclaredIdentifierException;
 import org.manifold.compiler.middle.Schematic;
 
-import com.google.common.collect.ImmutableMap;
-
 public class Netlist {
 
   private ConnectionType digitalWireType;
   private PortTypeValue digitalInType;
   private PortTypeValue digitalOutType;
 
-  private Map<String, Net> nets = new HashMap<>();
+  // Compact representation of the netlist. Every connected port has a
+  // dense integer ID (assigned by `portIndex`), and so does every net.
+  // `portNet[p]` is the ID of the net that port p is connected to, and
+  // the ports on net n are netMembers[netOffsets[n]] up to (but not
+  // including) netMembers[netOffsets[n + 1]]. Within each net, the
+  // driving (digitalOut) ports come first and are followed by the sinks
+  // (digitalIn), so the first netDrivers[n] members of net n are its drivers.
+  private PortIndex portIndex;
+  private int[] portNet;
+  private int[] netOffsets;
+  private int[] netMembers;
+  private int[] netDrivers;
+  private Net[] netsByID;
+
+  private Map<String, Net> nets;
 
   public Map<String, Net> getNets() {
-    return ImmutableMap.copyOf(nets);
+    return nets;
   }
 
-  private Map<PortValue, Net> connectedNet = new HashMap<>();
-
   public Net getConnectedNet(PortValue port) {
-    if (connectedNet.containsKey(port)) {
-      return connectedNet.get(port);
-    } else {
+    int portID = portIndex.getID(port);
+    if (portID == -1) {
       throw new IllegalArgumentException("port not connected to any nets");
     }
+    return netsByID[portNet[portID]];
+  }
+
+  public int getNumberOfPorts() {
+    return portIndex.size();
+  }
+
+  public int getNumberOfNets() {
+    return netsByID.length;
+  }
+
+  // Returns the ID of a connected port, or -1 if the port is not connected.
+  public int getPortID(PortValue port) {
+    return portIndex.getID(port);
+  }
+
+  public PortValue getPort(int portID) {
+    return portIndex.getPort(portID);
+  }
+
+  public int getNetID(int portID) {
+    return portNet[portID];
+  }
+
+  public Net getNet(int netID) {
+    return netsByID[netID];
+  }
+
+  public int getNetSize(int netID) {
+    return netOffsets[netID + 1] - netOffsets[netID];
+  }
+
+  // Returns the ID of the i-th port on a net.
+  public int getNetMember(int netID, int i) {
+    if (i < 0 || i >= getNetSize(netID)) {
+      throw new IndexOutOfBoundsException(Integer.toString(i));
+    }
+    return netMembers[netOffsets[netID] + i];
+  }
+
+  public int getNumberOfDrivers(Net net) {
+    return netDrivers[getID(net)];
+  }
+
+  // Returns the port driving a net, or null if nothing drives it.
+  // If the net is multiply driven, this is the driver with the lowest ID.
+  public PortValue getDriver(Net net) {
+    int netID = getID(net);
+    if (netDrivers[netID] == 0) {
+      return null;
+    }
+    return portIndex.getPort(netMembers[netOffsets[netID]]);
+  }
+
+  // Returns a read-only view of the ports driven by a net.
+  public List<PortValue> getSinks(Net net) {
+    final int netID = getID(net);
+    final int first = netOffsets[netID] + netDrivers[netID];
+    final int size = netOffsets[netID + 1] - first;
+    return new AbstractList<PortValue>() {
+      @Override
+      public PortValue get(int i) {
+        if (i < 0 || i >= size) {
+          throw new IndexOutOfBoundsException(Integer.toString(i));
+        }
+        return portIndex.getPort(netMembers[first + i]);
+      }
+
+      @Override
+      public int size() {
+        return size;
+      }
+    };
+  }
+
+  private int getID(Net net) {
+    int netID = net.getID();
+    if (netID < 0 || netID >= netsByID.length || netsByID[netID] != net) {
+      throw new IllegalArgumentException(
+          "net '" + net.getName() + "' does not belong to this netlist");
+    }
+    return netID;
   }
 
   public Netlist(Schematic schematic) throws UndeclaredIdentifierException,
       TypeMismatchException {
+    this(schematic, false);
+  }
+
+  // When `parallel` is true, ports are grouped into nets on the common
+  // fork/join pool. The result is identical to the serial build.
+  public Netlist(Schematic schematic, boolean parallel)
+      throws UndeclaredIdentifierException, TypeMismatchException {
     digitalWireType = schematic.getConnectionType("digitalWire");
     digitalInType = schematic.getPortType("digitalIn");
     digitalOutType = schematic.getPortType("digitalOut");
 
-    // iterate over connections in the schematic and build nets
-    for (Entry<String, ConnectionValue> connEntry : schematic.getConnections()
-        .entrySet()) {
-      String connectionName = connEntry.getKey();
+    Map<String, ConnectionValue> connections = schematic.getConnections();
+    int nConnections = connections.size();
+    String[] connectionNames = new String[nConnections];
+    int[] portFromIndex = new int[nConnections];
+    int[] portToIndex = new int[nConnections];
+
+    // iterate over connections in the schematic and give every connected
+    // port a dense index, so that nets can be built over plain int arrays
+    portIndex = new PortIndex(nConnections * 2);
+    int c = 0;
+    for (Entry<String, ConnectionValue> connEntry : connections.entrySet()) {
       ConnectionValue connection = connEntry.getValue();
 
       verifyConnectionIsDigitalWire(connection);
@@ -57,29 +171,97 @@ public class Netlist {
       verifyPortIsDigitalOut(portFrom);
       verifyPortIsDigitalIn(portTo);
 
-      // now we can take both ports and attach them to a net
-      if (connectedNet.containsKey(portFrom)) {
-        Net existingNet = connectedNet.get(portFrom);
-        if (connectedNet.containsKey(portTo)) {
-          // both ports already connected to a net
-        } else {
-          connectToNet(portTo, existingNet);
-        }
+      connectionNames[c] = connEntry.getKey();
+      portFromIndex[c] = portIndex.add(portFrom);
+      portToIndex[c] = portIndex.add(portTo);
+      ++c;
+    }
+    int nPorts = portIndex.size();
+
+    // both ends of a connection belong to the same net; this also merges
+    // two existing nets when a connection joins them.
+    // For now portNet[p] holds the representative port of p's net.
+    portNet = new int[nPorts];
+    if (parallel) {
+      ConcurrentDisjointSet portSets = new ConcurrentDisjointSet(nPorts);
+      ForkJoinPool pool = ForkJoinPool.commonPool();
+      pool.invoke(new UnionAction(portSets, portFromIndex, portToIndex,
+          0, nConnections));
+      pool.invoke(new FindAction(portSets, portNet, 0, nPorts));
+    } else {
+      DisjointSet portSets = new DisjointSet(nPorts);
+      for (int i = 0; i < nConnections; ++i) {
+        portSets.union(portFromIndex[i], portToIndex[i]);
+      }
+      for (int p = 0; p < nPorts; ++p) {
+        portNet[p] = portSets.find(p);
+      }
+    }
+
+    // number the nets in order of their lowest port ID; this does not
+    // depend on which port ended up representing each net, so both
+    // builds agree on every net ID
+    int[] rootNet = new int[nPorts];
+    Arrays.fill(rootNet, -1);
+    int nNets = 0;
+    for (int p = 0; p < nPorts; ++p) {
+      int root = portNet[p];
+      if (rootNet[root] == -1) {
+        rootNet[root] = nNets;
+        nNets += 1;
+      }
+      portNet[p] = rootNet[root];
+    }
+
+    // lay out the members of each net contiguously, drivers first
+    netOffsets = new int[nNets + 1];
+    netDrivers = new int[nNets];
+    for (int p = 0; p < nPorts; ++p) {
+      netOffsets[portNet[p] + 1] += 1;
+      if (isDriver(p)) {
+        netDrivers[portNet[p]] += 1;
+      }
+    }
+    for (int n = 0; n < nNets; ++n) {
+      netOffsets[n + 1] += netOffsets[n];
+    }
+    netMembers = new int[nPorts];
+    int[] driverFill = Arrays.copyOf(netOffsets, nNets);
+    int[] sinkFill = new int[nNets];
+    for (int n = 0; n < nNets; ++n) {
+      sinkFill[n] = netOffsets[n] + netDrivers[n];
+    }
+    for (int p = 0; p < nPorts; ++p) {
+      if (isDriver(p)) {
+        netMembers[driverFill[portNet[p]]++] = p;
       } else {
-        // portFrom not connected to a net
-        if (connectedNet.containsKey(portTo)) {
-          Net existingNet = connectedNet.get(portTo);
-          connectToNet(portFrom, existingNet);
-        } else {
-          // neither port is connected to a net, so create a new one
-          String netName = "n_" + connectionName;
-          Net newNet = new Net(netName);
-          nets.put(netName, newNet);
-          connectToNet(portFrom, newNet);
-          connectToNet(portTo, newNet);
-        }
+        netMembers[sinkFill[portNet[p]]++] = p;
+      }
+    }
+
+    // each net is named after the first connection (in iteration order)
+    // that touches it
+    String[] netNames = new String[nNets];
+    for (int i = 0; i < nConnections; ++i) {
+      int n = portNet[portFromIndex[i]];
+      if (netNames[n] == null) {
+        netNames[n] = "n_" + connectionNames[i];
       }
     }
+
+    // now that every net is final, create exactly one Net object per net
+    netsByID = new Net[nNets];
+    Map<String, Net> netsByName = new HashMap<>();
+    for (int n = 0; n < nNets; ++n) {
+      Net net = new Net(netNames[n], n, new NetPorts(n));
+      netsByID[n] = net;
+      netsByName.put(net.getName(), net);
+    }
+    nets = Collections.unmodifiableMap(netsByName);
+  }
+
+  private boolean isDriver(int portID) {
+    return portIndex.getPort(portID).getType() == digitalOutType;
   }
 
   private void verifyConnectionIsDigitalWire(ConnectionValue connection)
@@ -103,8 +285,121 @@ public class Netlist {
     }
   }
 
-  private void connectToNet(PortValue port, Net net) {
-    net.addPort(port);
-    connectedNet.put(port, net);
+  // Below this many items, parallel builds stop splitting work.
+  private static final int PARALLEL_GRAIN = 4096;
+
+  // Unions the two ends of connections [lo, hi).
+  private static class UnionAction extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final ConcurrentDisjointSet sets;
+    private final int[] from;
+    private final int[] to;
+    private final int lo;
+    private final int hi;
+
+    public UnionAction(ConcurrentDisjointSet sets, int[] from, int[] to,
+        int lo, int hi) {
+      this.sets = sets;
+      this.from = from;
+      this.to = to;
+      this.lo = lo;
+      this.hi = hi;
+    }
+
+    @Override
+    protected void compute() {
+      if (hi - lo <= PARALLEL_GRAIN) {
+        for (int i = lo; i < hi; ++i) {
+          sets.union(from[i], to[i]);
+        }
+      } else {
+        int mid = (lo + hi) >>> 1;
+        invokeAll(new UnionAction(sets, from, to, lo, mid),
+            new UnionAction(sets, from, to, mid, hi));
+      }
+    }
+  }
+
+  // Records the representative of every element in [lo, hi).
+  // Must only run once all unions are finished.
+  private static class FindAction extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final ConcurrentDisjointSet sets;
+    private final int[] roots;
+    private final int lo;
+    private final int hi;
+
+    public FindAction(ConcurrentDisjointSet sets, int[] roots,
+        int lo, int hi) {
+      this.sets = sets;
+      this.roots = roots;
+      this.lo = lo;
+      this.hi = hi;
+    }
+
+    @Override
+    protected void compute() {
+      if (hi - lo <= PARALLEL_GRAIN) {
+        for (int i = lo; i < hi; ++i) {
+          roots[i] = sets.find(i);
+        }
+      } else {
+        int mid = (lo + hi) >>> 1;
+        invokeAll(new FindAction(sets, roots, lo, mid),
+            new FindAction(sets, roots, mid, hi));
+      }
+    }
+  }
+
+  // Read-only view of the ports on one net, backed by the netlist's arrays.
+  private class NetPorts extends AbstractSet<PortValue> {
+    private final int netID;
+
+    public NetPorts(int netID) {
+      this.netID = netID;
+    }
+
+    @Override
+    public int size() {
+      return getNetSize(netID);
+    }
+
+    @Override
+    public boolean contains(Object o) {
+      if (!(o instanceof PortValue)) {
+        return false;
+      }
+      int portID = portIndex.getID((PortValue) o);
+      return portID != -1 && portNet[portID] == netID;
+    }
+
+    @Override
+    public Iterator<PortValue> iterator() {
+      return new Iterator<PortValue>() {
+        private int next = netOffsets[netID];
+
+        @Override
+        public boolean hasNext() {
+          return next < netOffsets[netID + 1];
+        }
+
+        @Override
+        public PortValue next() {
+          if (!hasNext()) {
+            throw new NoSuchElementException();
+          }
+          PortValue port = portIndex.getPort(netMembers[next]);
+          next += 1;
+          return port;
+        }
+
+        @Override
+        public void remove() {
+          throw new UnsupportedOperationException("nets are read-only");
+        }
+      };
+    }
   }
 }
@@ -2,10 +2,6 @@ package org.manifold.compiler.back.digital;
 
 import java.util.Map;
 
-import org.manifold.compiler.PortTypeValue;
-import org.manifold.compiler.PortValue;
-import org.manifold.compiler.UndeclaredIdentifierException;
-import org.manifold.compiler.UndefinedBehaviourError;
 import org.manifold.compiler.middle.Schematic;
 
 
@@ -13,18 +9,11 @@ public class NoMultipleDriversCheck extends Check {
 
   private Schematic schematic;
   private Netlist netlist;
-  private PortTypeValue digitalOutType;
 
   public NoMultipleDriversCheck(Schematic schematic, Netlist netlist) {
     super("no multiple drivers");
     this.schematic = schematic;
     this.netlist = netlist;
-    try {
-      this.digitalOutType = schematic.getPortType("digitalOut");
-    } catch (UndeclaredIdentifierException e) {
-      throw new UndefinedBehaviourError(
-          "schematic does not define digitalOut port type");
-    }
   }
 
   @Override
@@ -32,15 +21,10 @@ public class NoMultipleDriversCheck extends Check {
     Map<String, Net> allNets = netlist.getNets();
     boolean noMultipleDrivers = true;
     for (Net net : allNets.values()) {
-      int nDrivers = 0;
-      // a driver is any Port of type `digitalOutType`
-      for (PortValue port : net.getConnectedPorts()) {
-        if (port.getType() == digitalOutType) {
-          nDrivers += 1;
-        }
-      }
+      // the netlist counted each net's drivers when it was built
+      int nDrivers = netlist.getNumberOfDrivers(net);
       /*
-       * after checking all ports on this net, if there are at least 2 drivers
+       * if there are at least 2 drivers
        * then this net is multiply-driven and DRC fails
        */
       if (nDrivers >= 2) {
@@ -0,0 +1,96 @@
+package org.manifold.compiler.back.digital;
+
+import java.util.Arrays;
+
+import org.manifold.compiler.PortValue;
+
+// Assigns dense integer IDs (0, 1, 2, ...) to ports in the order they are
+// first added. Lookups go through an open-addressing table keyed on object
+// identity, so no boxed keys or map entries are allocated per port:
+// the whole index is one int[] table plus one PortValue[] array.
+
+public class PortIndex {
+  // table slots hold (port ID + 1); zero marks an empty slot
+  private int[] table;
+  private PortValue[] ports;
+  private int size = 0;
+
+  public PortIndex(int expectedSize) {
+    int capacity = 16;
+    while (capacity < expectedSize * 2) {
+      capacity <<= 1;
+    }
+    table = new int[capacity];
+    ports = new PortValue[Math.max(expectedSize, 1)];
+  }
+
+  public int size() {
+    return size;
+  }
+
+  // Returns the ID of a port, or -1 if the port has not been added.
+  public int getID(PortValue port) {
+    int mask = table.length - 1;
+    int slot = hash(port) & mask;
+    while (table[slot] != 0) {
+      int id = table[slot] - 1;
+      if (ports[id] == port) {
+        return id;
+      }
+      slot = (slot + 1) & mask;
+    }
+    return -1;
+  }
+
+  public PortValue getPort(int id) {
+    if (id < 0 || id >= size) {
+      throw new IndexOutOfBoundsException(Integer.toString(id));
+    }
+    return ports[id];
+  }
+
+  // Returns the ID of a port, assigning the next free ID if it is new.
+  public int add(PortValue port) {
+    int mask = table.length - 1;
+    int slot = hash(port) & mask;
+    while (table[slot] != 0) {
+      int id = table[slot] - 1;
+      if (ports[id] == port) {
+        return id;
+      }
+      slot = (slot + 1) & mask;
+    }
+    int id = size;
+    if (id == ports.length) {
+      ports = Arrays.copyOf(ports, ports.length * 2);
+    }
+    ports[id] = port;
+    table[slot] = id + 1;
+    size += 1;
+    // keep the load factor at or below 1/2
+    if (size * 2 > table.length) {
+      rehash(table.length * 2);
+    }
+    return id;
+  }
+
+  private void rehash(int capacity) {
+    int[] newTable = new int[capacity];
+    int mask = capacity - 1;
+    for (int id = 0; id < size; ++id) {
+      int slot = hash(ports[id]) & mask;
+      while (newTable[slot] != 0) {
+        slot = (slot + 1) & mask;
+      }
+      newTable[slot] = id + 1;
+    }
+    table = newTable;
+  }
+
+  private static int hash(PortValue port) {
+    // spread the identity hash so that linear probing stays short
+    int h = System.identityHashCode(port);
+    return h ^ (h >>> 16);
+  }
+
+}
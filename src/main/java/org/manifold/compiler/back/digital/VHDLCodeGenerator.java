@@ -44,6 +44,11 @@ public class VHDLCodeGenerator {
     this.runChecks = run;
   }
 
+  private boolean parallelNetlist = false;
+  public void setParallelNetlist(boolean parallel) {
+    this.parallelNetlist = parallel;
+  }
+
   // name of VHDL architecture corresponding to generated entities
   private String architecture = "MANIFOLD";
 
@@ -68,6 +73,26 @@ public class VHDLCodeGenerator {
     throw new CodeGenerationError(message);
   }
 
+  // escaped net names by net ID, sized once the netlist is built and
+  // filled in as they are first needed
+  private String[] escapedNets = new String[0];
+
+  // Every reference to a net goes through here, so each net name is
+  // escaped once no matter how many ports it is connected to.
+  private String signalName(Net net) {
+    int id = net.getID();
+    if (id < 0 || id >= escapedNets.length) {
+      // not one of our netlist's nets
+      return escapeIdentifier(net.getName());
+    }
+    String escaped = escapedNets[id];
+    if (escaped == null) {
+      escaped = escapeIdentifier(net.getName());
+      escapedNets[id] = escaped;
+    }
+    return escaped;
+  }
+
   private String escapeIdentifier(String id) {
     // VHDL-93 extended identifiers are delimited by backslashes,
     // and can contain ANY printing character from the VHDL-93 character set.
@@ -103,7 +128,8 @@ public class VHDLCodeGenerator {
     // build netlist from schematic
     try {
       log.info("Building netlist");
-      netlist = new Netlist(schematic);
+      netlist = new Netlist(schematic, parallelNetlist);
+      escapedNets = new String[netlist.getNumberOfNets()];
     } catch (UndeclaredIdentifierException | TypeMismatchException e) {
       err(e.getMessage());
     }
@@ -252,7 +278,7 @@ public class VHDLCodeGenerator {
         String netName = net.getName();
         log.debug("found net " + netName);
         writer.print("signal ");
-        writer.print(escapeIdentifier(netName));
+        writer.print(signalName(net));
         writer.print(" : std_logic");
         // we need to check whether this is a register, and if so,
         // assign the signal an initial value
@@ -320,7 +346,7 @@ public class VHDLCodeGenerator {
         }
         first = false;
         // look for the outputPin(s) driven by this net
-        for (PortValue p : outNet.getConnectedPorts()) {
+        for (PortValue p : netlist.getSinks(outNet)) {
           NodeValue node = p.getParent();
           if (node.getType().equals(outputPinType)) {
             String outputName = schematic.getNodeName(node);
@@ -343,7 +369,7 @@ public class VHDLCodeGenerator {
     for (Net inNet : inputNets) {
       NodeValue node = getDriver(inNet);
       String inputName = schematic.getNodeName(node);
-      String netName = escapeIdentifier(inNet.getName());
+      String netName = signalName(inNet);
       log.debug("input '" + inputName + "' maps to net '" + netName + "'");
       stmts.append(netName).append(" <= ").append(inputName).append(";")
           .append(newline);
@@ -355,8 +381,8 @@ public class VHDLCodeGenerator {
   private String generateOutputAssignments(Set<Net> outputNets) {
     StringBuilder stmts = new StringBuilder();
     for (Net outNet : outputNets) {
-      String netName = escapeIdentifier(outNet.getName());
-      for (PortValue p : outNet.getConnectedPorts()) {
+      String netName = signalName(outNet);
+      for (PortValue p : netlist.getSinks(outNet)) {
         NodeValue node = p.getParent();
         if (node.getType().equals(outputPinType)) {
           String outputName = schematic.getNodeName(node);
@@ -383,14 +409,14 @@ public class VHDLCodeGenerator {
        */
       try {
         // Start by getting the names of all signals connected to the register.
-        String sigIn = escapeIdentifier(netlist.getConnectedNet(
-            node.getPort("in")).getName());
-        String sigOut = escapeIdentifier(netlist.getConnectedNet(
-            node.getPort("out")).getName());
-        String sigClock = escapeIdentifier(netlist.getConnectedNet(
-            node.getPort("clock")).getName());
-        String sigReset = escapeIdentifier(netlist.getConnectedNet(
-            node.getPort("reset")).getName());
+        String sigIn = signalName(netlist.getConnectedNet(
+            node.getPort("in")));
+        String sigOut = signalName(netlist.getConnectedNet(
+            node.getPort("out")));
+        String sigClock = signalName(netlist.getConnectedNet(
+            node.getPort("clock")));
+        String sigReset = signalName(netlist.getConnectedNet(
+            node.getPort("reset")));
 
         // Now get the values of all important attributes.
         boolean initialValue = ((BooleanValue) node
@@ -459,12 +485,12 @@ public class VHDLCodeGenerator {
     } else if (node.getType().equals(andType)) {
       // out <= (in0 AND in1);
       try {
-        String sigIn0 = escapeIdentifier(netlist.getConnectedNet(
-            node.getPort("in0")).getName());
-        String sigIn1 = escapeIdentifier(netlist.getConnectedNet(
-            node.getPort("in1")).getName());
-        String sigOut = escapeIdentifier(netlist.getConnectedNet(
-            node.getPort("out")).getName());
+        String sigIn0 = signalName(netlist.getConnectedNet(
+            node.getPort("in0")));
+        String sigIn1 = signalName(netlist.getConnectedNet(
+            node.getPort("in1")));
+        String sigOut = signalName(netlist.getConnectedNet(
+            node.getPort("out")));
         stmts.append(sigOut).append(" <= ").append(sigIn0).append(" AND ")
             .append(sigIn1).append(";").append(newline);
       } catch (UndeclaredIdentifierException e) {
@@ -473,12 +499,12 @@ public class VHDLCodeGenerator {
     } else if (node.getType().equals(orType)) {
       // out <= (in0 OR in1);
       try {
-        String sigIn0 = escapeIdentifier(netlist.getConnectedNet(
-            node.getPort("in0")).getName());
-        String sigIn1 = escapeIdentifier(netlist.getConnectedNet(
-            node.getPort("in1")).getName());
-        String sigOut = escapeIdentifier(netlist.getConnectedNet(
-            node.getPort("out")).getName());
+        String sigIn0 = signalName(netlist.getConnectedNet(
+            node.getPort("in0")));
+        String sigIn1 = signalName(netlist.getConnectedNet(
+            node.getPort("in1")));
+        String sigOut = signalName(netlist.getConnectedNet(
+            node.getPort("out")));
         stmts.append(sigOut).append(" <= (").append(sigIn0).append(" OR ")
             .append(sigIn1).append(");").append(newline);
       } catch (UndeclaredIdentifierException e) {
@@ -487,10 +513,10 @@ public class VHDLCodeGenerator {
     } else if (node.getType().equals(notType)) {
       // out <= (NOT in);
       try {
-        String sigIn = escapeIdentifier(netlist.getConnectedNet(
-            node.getPort("in")).getName());
-        String sigOut = escapeIdentifier(netlist.getConnectedNet(
-            node.getPort("out")).getName());
+        String sigIn = signalName(netlist.getConnectedNet(
+            node.getPort("in")));
+        String sigOut = signalName(netlist.getConnectedNet(
+            node.getPort("out")));
         stmts.append(sigOut).append(" <= (NOT ").append(sigIn)
             .append(");").append(newline);
       } catch (UndeclaredIdentifierException e) {
@@ -513,12 +539,12 @@ public class VHDLCodeGenerator {
 
   private NodeValue getDriver(Net net) {
     // PRECONDITION: DRC has verified that exactly one digitalOut is connected
-    for (PortValue port : net.getConnectedPorts()) {
-      if (port.getType() == outputPortType) {
-        return port.getParent();
-      }
+    PortValue driver = netlist.getDriver(net);
+    if (driver == null) {
+      throw new UndefinedBehaviourError(
+          "undriven net '" + net.getName() + "'");
     }
-    throw new UndefinedBehaviourError("undriven net '" + net.getName() + "'");
+    return driver.getParent();
   }
 
 }
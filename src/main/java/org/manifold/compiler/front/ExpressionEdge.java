@@ -13,12 +13,35 @@ public class ExpressionEdge {
     this.name = name;
   }
   
+  // Bookkeeping for the ExpressionGraph that owns this edge, if any.
+  // The graph keeps per-vertex adjacency lists; `sourceSlot` and
+  // `targetSlot` are this edge's positions in the lists of its source
+  // and target, so that rewiring the edge updates them in O(1).
+  ExpressionGraph graph = null;
+  int sourceSlot = -1;
+  int targetSlot = -1;
+  private boolean removed = false;
+
+  public boolean isRemoved() {
+    return removed;
+  }
+  void markRemoved() {
+    removed = true;
+    graph = null;
+  }
+  
   private ExpressionVertex source;
   public ExpressionVertex getSource() {
     return source;
   }
   public void setSource(ExpressionVertex newSource) {
+    if (graph != null) {
+      graph.detachSource(this);
+    }
     this.source = newSource;
+    if (graph != null) {
+      graph.attachSource(this);
+    }
   }
   
   private ExpressionVertex target;
@@ -26,7 +49,13 @@ public class ExpressionEdge {
     return target;
   }
   public void setTarget(ExpressionVertex newTarget) {
+    if (graph != null) {
+      graph.detachTarget(this);
+    }
     this.target = newTarget;
+    if (graph != null) {
+      graph.attachTarget(this);
+    }
   }
   
   private TypeValue type;
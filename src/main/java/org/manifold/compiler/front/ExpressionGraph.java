@@ -6,6 +6,9 @@ import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.manifold.compiler.ArrayTypeValue;
 import org.manifold.compiler.ArrayValue;
@@ -42,26 +45,114 @@ public class ExpressionGraph implements ExpressionVisitor, ValueVisitor {
       new ArrayList<>();
   private Map<VariableIdentifier, VariableReferenceVertex> variableVertices = 
       new HashMap<>();
+  // Every edge in the graph, in creation order. Removed edges are only
+  // marked (see ExpressionEdge.isRemoved()) and stay here until the next
+  // call to compactEdges(), so removing an edge is O(1).
   private List<ExpressionEdge> edges = new ArrayList<>();
+  private int removedEdgeCount = 0;
+  // Adjacency lists: the edges leaving and entering each vertex.
+  private Map<ExpressionVertex, List<ExpressionEdge>> outgoingEdges =
+      new HashMap<>();
+  private Map<ExpressionVertex, List<ExpressionEdge>> incomingEdges =
+      new HashMap<>();
   
   public List<ExpressionEdge> getEdgesFromSource(ExpressionVertex v) {
-    List<ExpressionEdge> edgesFrom = new LinkedList<>();
-    for (ExpressionEdge e : edges) {
-      if (v.equals(e.getSource())) {
-        edgesFrom.add(e);
-      }
+    List<ExpressionEdge> edgesFrom = outgoingEdges.get(v);
+    if (edgesFrom == null) {
+      return new ArrayList<>();
     }
-    return edgesFrom;
+    return new ArrayList<>(edgesFrom);
   }
   
   public List<ExpressionEdge> getEdgesToTarget(ExpressionVertex v) {
-    List<ExpressionEdge> edgesTo = new LinkedList<>();
+    List<ExpressionEdge> edgesTo = incomingEdges.get(v);
+    if (edgesTo == null) {
+      return new ArrayList<>();
+    }
+    return new ArrayList<>(edgesTo);
+  }
+
+  private void addEdge(ExpressionEdge e) {
+    e.graph = this;
+    edges.add(e);
+    attachSource(e);
+    attachTarget(e);
+  }
+
+  private void removeEdge(ExpressionEdge e) {
+    detachSource(e);
+    detachTarget(e);
+    e.markRemoved();
+    removedEdgeCount += 1;
+  }
+
+  // Drop every removed edge from the edge list in a single pass.
+  private void compactEdges() {
+    if (removedEdgeCount == 0) {
+      return;
+    }
+    List<ExpressionEdge> liveEdges =
+        new ArrayList<>(edges.size() - removedEdgeCount);
     for (ExpressionEdge e : edges) {
-      if (v.equals(e.getTarget())) {
-        edgesTo.add(e);
+      if (!e.isRemoved()) {
+        liveEdges.add(e);
+      }
+    }
+    edges = liveEdges;
+    removedEdgeCount = 0;
+  }
+
+  // The following are called by ExpressionEdge whenever an edge owned by
+  // this graph changes its source or target.
+
+  void attachSource(ExpressionEdge e) {
+    if (e.getSource() != null) {
+      e.sourceSlot = appendAdjacent(outgoingEdges, e.getSource(), e);
+    }
+  }
+
+  void detachSource(ExpressionEdge e) {
+    if (e.getSource() != null) {
+      List<ExpressionEdge> adjacent = outgoingEdges.get(e.getSource());
+      int last = adjacent.size() - 1;
+      ExpressionEdge moved = adjacent.remove(last);
+      if (moved != e) {
+        adjacent.set(e.sourceSlot, moved);
+        moved.sourceSlot = e.sourceSlot;
+      }
+      e.sourceSlot = -1;
+    }
+  }
+
+  void attachTarget(ExpressionEdge e) {
+    if (e.getTarget() != null) {
+      e.targetSlot = appendAdjacent(incomingEdges, e.getTarget(), e);
+    }
+  }
+
+  void detachTarget(ExpressionEdge e) {
+    if (e.getTarget() != null) {
+      List<ExpressionEdge> adjacent = incomingEdges.get(e.getTarget());
+      int last = adjacent.size() - 1;
+      ExpressionEdge moved = adjacent.remove(last);
+      if (moved != e) {
+        adjacent.set(e.targetSlot, moved);
+        moved.targetSlot = e.targetSlot;
       }
+      e.targetSlot = -1;
+    }
+  }
+
+  private static int appendAdjacent(
+      Map<ExpressionVertex, List<ExpressionEdge>> adjacency,
+      ExpressionVertex v, ExpressionEdge e) {
+    List<ExpressionEdge> adjacent = adjacency.get(v);
+    if (adjacent == null) {
+      adjacent = new ArrayList<>(2);
+      adjacency.put(v, adjacent);
     }
-    return edgesTo;
+    adjacent.add(e);
+    return adjacent.size() - 1;
   }
   
   public List<String> getPrintableEdges() {
@@ -73,37 +164,111 @@ public class ExpressionGraph implements ExpressionVisitor, ValueVisitor {
   }
   
   private Scope scope;
+
+  // When true, each variable reference is resolved to the vertex that
+  // defines the variable while the graph is being built, instead of going
+  // through a VariableReferenceVertex that optimizeOutVariables() has to
+  // contract afterwards.
+  private final boolean resolveVariablesEagerly;
+  // the edge leaving the value assigned to each variable
+  private Map<VariableIdentifier, ExpressionEdge> variableDefinitions =
+      new HashMap<>();
+  // References to variables that had not been assigned yet when they were
+  // visited. Their source is a placeholder vertex until the whole graph has
+  // been built, at which point resolveForwardReferences() patches them.
+  private Map<VariableIdentifier, VariableReferenceVertex> unresolved =
+      new HashMap<>();
+  private List<ExpressionEdge> forwardReferences = new ArrayList<>();
   
   public ExpressionGraph(Scope scope) {
+    this(scope, false);
+  }
+
+  public ExpressionGraph(Scope scope, boolean resolveVariablesEagerly) {
     this.scope = scope;
+    this.resolveVariablesEagerly = resolveVariablesEagerly;
   }
   
   public void buildFrom(List<Expression> expressions) {
     for (Expression e : expressions) {
       e.accept(this);
     }
+    if (resolveVariablesEagerly) {
+      resolveForwardReferences();
+    }
+    compactEdges();
+  }
+
+  private void resolveForwardReferences() {
+    for (ExpressionEdge reference : forwardReferences) {
+      // follow chains like `b = a; a = x;` to the real source
+      int hops = 0;
+      while (reference.getSource() instanceof VariableReferenceVertex) {
+        VariableIdentifier id =
+            ((VariableReferenceVertex) reference.getSource()).getIdentifier();
+        ExpressionEdge definition = variableDefinitions.get(id);
+        if (definition == null) {
+          throw new UndefinedBehaviourError(
+              "unassigned variable '" + id.toString() + "'");
+        }
+        hops += 1;
+        if (hops > variableDefinitions.size()) {
+          throw new UndefinedBehaviourError(
+              "circular assignment to variable '" + id.toString() + "'");
+        }
+        reference.setSource(definition.getSource());
+        reference.setType(definition.getType());
+      }
+    }
+    forwardReferences.clear();
+    unresolved.clear();
+  }
+
+  // Build the edge for a reference to `id` when variables are resolved
+  // eagerly; its target is filled in by whoever consumes it.
+  private ExpressionEdge resolveVariableReference(VariableIdentifier id) {
+    ExpressionEdge definition = variableDefinitions.get(id);
+    ExpressionEdge reference;
+    if (definition == null) {
+      VariableReferenceVertex placeholder = unresolved.get(id);
+      if (placeholder == null) {
+        placeholder = new VariableReferenceVertex(id);
+        unresolved.put(id, placeholder);
+      }
+      reference = new ExpressionEdge(placeholder, null, null);
+    } else {
+      reference = new ExpressionEdge(definition.getSource(), null,
+          definition.getType());
+    }
+    reference.setName(id.getName());
+    addEdge(reference);
+    // the definition may itself still be waiting on a forward reference
+    if (reference.getSource() instanceof VariableReferenceVertex) {
+      forwardReferences.add(reference);
+    }
+    return reference;
   }
 
   // Remove every edge in the graph whose source or target is null.
   public void removeUnconnectedEdges() {
-    Iterator<ExpressionEdge> edgeIt = edges.iterator();
-    while (edgeIt.hasNext()) {
-      ExpressionEdge edge = edgeIt.next();
+    for (ExpressionEdge edge : edges) {
       if (edge.getSource() == null || edge.getTarget() == null) {
-        edgeIt.remove();
+        removeEdge(edge);
       } else if (edge.getSource() instanceof TupleValueVertex) {
         // all edges out of zero-length tuples are removed
         TupleValueVertex tuple = (TupleValueVertex) edge.getSource();
         if (tuple.getValue().getSize() == 0) {
-          edgeIt.remove();
+          removeEdge(edge);
         }
       }
     }
+    compactEdges();
   }
   
   // Optimize variables out of the design by finding each edge from a variable
   // to a target and setting the source of that edge to 
   // the source of the variable.
+  // Every step is O(1) per edge, so this is linear in the size of the graph.
   public void optimizeOutVariables() {
     Iterator<Map.Entry<VariableIdentifier, VariableReferenceVertex>> varIt = 
         variableVertices.entrySet().iterator();
@@ -133,18 +298,36 @@ public class ExpressionGraph implements ExpressionVisitor, ValueVisitor {
         targetEdge.setName(id.getName() + targetEdge.getName());
       }
       // delete the source edge
-      edges.remove(sourceEdge);
+      removeEdge(sourceEdge);
       // delete the variable
+      outgoingEdges.remove(vertex);
+      incomingEdges.remove(vertex);
       varIt.remove();
     }
+    compactEdges();
   }
   
   public void elaboratePrimitives() throws SchematicException {
-    Integer uuid = 0;
-    for (PrimitiveFunctionVertex pFunc : primitiveFunctionVertices) {
-      pFunc.elaborate();
-      pFunc.setUniqueSuffix(uuid);
-      uuid += 1;
+    elaboratePrimitives(false);
+  }
+
+  // When `parallel` is true, primitives are elaborated on the common
+  // fork/join pool. Every vertex gets the same suffix (its position in
+  // creation order) either way, so instance names do not depend on the mode.
+  public void elaboratePrimitives(boolean parallel) throws SchematicException {
+    int nPrimitives = primitiveFunctionVertices.size();
+    for (int i = 0; i < nPrimitives; ++i) {
+      primitiveFunctionVertices.get(i).setUniqueSuffix(i);
+    }
+    if (parallel) {
+      ElaboratePrimitivesAction action =
+          new ElaboratePrimitivesAction(0, nPrimitives);
+      ForkJoinPool.commonPool().invoke(action);
+      action.rethrow();
+    } else {
+      for (PrimitiveFunctionVertex pFunc : primitiveFunctionVertices) {
+        pFunc.elaborate();
+      }
     }
   }
   
@@ -162,109 +345,306 @@ public class ExpressionGraph implements ExpressionVisitor, ValueVisitor {
   public void elaborateConnections(Schematic schematic) 
       throws UndeclaredIdentifierException, UndeclaredAttributeException, 
       InvalidAttributeException, TypeMismatchException {
+    elaborateConnections(schematic, false);
+  }
+
+  // When `parallel` is true, connections are built on the common fork/join
+  // pool. Each edge's connections are numbered up front, so connection
+  // names are the same as in a serial elaboration.
+  public void elaborateConnections(Schematic schematic, boolean parallel)
+      throws UndeclaredIdentifierException, UndeclaredAttributeException, 
+      InvalidAttributeException, TypeMismatchException {
     // TODO generalize connection type
     // TODO connection attributes
-    ConnectionType connType = schematic.getConnectionType("digitalWire");
-    PortTypeValue inputType = schematic.getPortType("digitalIn");
-    PortTypeValue outputType = schematic.getPortType("digitalOut");
-    Map<String, Value> noAttributes = new HashMap<>();
-    
-    Integer uuid = 0;
-    
-    for (ExpressionEdge edge : edges) {
-      TypeValue edgeType = edge.getType();
-      if (edgeType == null) {
+    ConnectionContext ctx = new ConnectionContext(
+        schematic.getConnectionType("digitalWire"),
+        schematic.getPortType("digitalIn"),
+        schematic.getPortType("digitalOut"));
+
+    // first pass: check every edge and work out where its connections go;
+    // the connections of edge i are numbered firstConnection[i] and up
+    int nEdges = edges.size();
+    int[] firstConnection = new int[nEdges + 1];
+    for (int i = 0; i < nEdges; ++i) {
+      firstConnection[i + 1] = firstConnection[i]
+          + countConnections(edges.get(i), ctx);
+    }
+    int nConnections = firstConnection[nEdges];
+    String[] connIDs = new String[nConnections];
+    ConnectionValue[] conns = new ConnectionValue[nConnections];
+
+    // second pass: build the connections themselves
+    if (parallel) {
+      ElaborateConnectionsAction action = new ElaborateConnectionsAction(
+          ctx, firstConnection, connIDs, conns, 0, nEdges);
+      ForkJoinPool.commonPool().invoke(action);
+      action.rethrow();
+    } else {
+      for (int i = 0; i < nEdges; ++i) {
+        elaborateEdge(edges.get(i), ctx, firstConnection[i], connIDs, conns);
+      }
+    }
+    for (int i = 0; i < nConnections; ++i) {
+      connections.put(connIDs[i], conns[i]);
+    }
+  }
+
+  // Everything elaborateEdge() needs to know about the schematic.
+  private static class ConnectionContext {
+    private final ConnectionType connType;
+    private final PortTypeValue inputType;
+    private final PortTypeValue outputType;
+    private final Map<String, Value> noAttributes = new HashMap<>();
+
+    public ConnectionContext(ConnectionType connType,
+        PortTypeValue inputType, PortTypeValue outputType) {
+      this.connType = connType;
+      this.inputType = inputType;
+      this.outputType = outputType;
+    }
+  }
+
+  // Returns the number of connections that elaborating `edge` will create,
+  // after checking that the edge can be elaborated at all.
+  private int countConnections(ExpressionEdge edge, ConnectionContext ctx) {
+    TypeValue edgeType = edge.getType();
+    if (edgeType == null) {
+      throw new UndefinedBehaviourError(
+          "cannot elaborate edge " + edge.toString() 
+          + " because its type is null");
+    }
+    ExpressionVertex vSource = edge.getSource();
+    ExpressionVertex vTarget = edge.getTarget();
+    // if the target is not a primitive function, skip
+    // (we'll do it in reverse)
+    if (!(vTarget instanceof PrimitiveFunctionVertex)) {
+      return 0;
+    }
+    PrimitiveFunctionVertex target = (PrimitiveFunctionVertex) vTarget;
+    if (edgeType instanceof BooleanTypeValue) {
+      return 1;
+    } else if (edgeType instanceof TupleTypeValue 
+        && vSource instanceof PrimitiveFunctionVertex) {
+      PrimitiveFunctionVertex source = (PrimitiveFunctionVertex) vSource;
+      // check that #outputs = #inputs
+      int nOutputs = source.getNumberOfPortsOfType(ctx.outputType);
+      int nInputs = target.getNumberOfPortsOfType(ctx.inputType);
+      if (!(nInputs == nOutputs)) {
         throw new UndefinedBehaviourError(
-            "cannot elaborate edge " + edge.toString() 
-            + " because its type is null");
+            "connected source with " + nOutputs + " outputs"
+            + " to target with " + nInputs + " inputs");
       }
-      ExpressionVertex vSource = edge.getSource();
-      ExpressionVertex vTarget = edge.getTarget();
-      // if the target is not a primitive function, skip
-      // (we'll do it in reverse)
-      if (!(vTarget instanceof PrimitiveFunctionVertex)) {
-        continue;
+      return nInputs;
+    } else if (edgeType instanceof TupleTypeValue
+        && vSource instanceof TupleValueVertex) {
+      TupleValueVertex tuple = (TupleValueVertex) vSource;
+      int nInputs = target.getNumberOfPortsOfType(ctx.inputType);
+      if (!(nInputs == tuple.getValue().getSize())) {
+        throw new UndefinedBehaviourError(
+            "connected source with " + tuple.getValue().getSize() + " outputs"
+            + " to target with " + nInputs + " inputs");
       }
-      PrimitiveFunctionVertex target = (PrimitiveFunctionVertex) vTarget;
-      if (edgeType instanceof BooleanTypeValue) {
-        PrimitiveFunctionVertex source = (PrimitiveFunctionVertex) vSource;
-        String sourcePortName = source.getNthPortOfType(outputType, 0);
-        PortValue sourcePort = source.getNodeValue().getPort(sourcePortName);
-        
-        String targetPortName = target.getNthPortOfType(inputType, 0);
-        PortValue targetPort = target.getNodeValue().getPort(targetPortName);
-        
-        ConnectionValue conn = new ConnectionValue(
-            connType, sourcePort, targetPort, noAttributes);
-        String connID = "n" + Integer.toString(uuid) 
-            + "_" + source.getInstanceName() 
-            + "_" + sourcePortName 
-            + "__" + target.getInstanceName()
-            + "_" + targetPortName;
-        uuid += 1;
-        connections.put(connID, conn);
-      } else if (edgeType instanceof TupleTypeValue 
-          && vSource instanceof PrimitiveFunctionVertex) {
-        PrimitiveFunctionVertex source = (PrimitiveFunctionVertex) vSource;
-        // check that #outputs = #inputs
-        int nOutputs = source.getNumberOfPortsOfType(outputType);
-        int nInputs = target.getNumberOfPortsOfType(inputType);
-        if (!(nInputs == nOutputs)) {
-          throw new UndefinedBehaviourError(
-              "connected source with " + nOutputs + " outputs"
-              + " to target with " + nInputs + " inputs");
-        }
-        // connect source 0 to target 0, etc.
-        for (int i = 0; i < nInputs; ++i) {
-          String sourcePortName = source.getNthPortOfType(outputType, i);
-          PortValue sourcePort = source.getNodeValue().getPort(sourcePortName);
-          String targetPortName = target.getNthPortOfType(inputType, i);
-          PortValue targetPort = target.getNodeValue().getPort(targetPortName);
-          ConnectionValue conn = new ConnectionValue(
-              connType, sourcePort, targetPort, noAttributes);
-          String connID = "n" + Integer.toString(uuid) 
-              + "_" + source.getInstanceName() 
-              + "_" + sourcePortName 
-              + "__" + target.getInstanceName()
-              + "_" + targetPortName;
-          uuid += 1;
-          connections.put(connID, conn);
-        }
-      } else if (edgeType instanceof TupleTypeValue
-          && vSource instanceof TupleValueVertex) {
-        TupleValueVertex tuple = (TupleValueVertex) vSource;
-        int nInputs = target.getNumberOfPortsOfType(inputType);
-        if (!(nInputs == tuple.getValue().getSize())) {
-          throw new UndefinedBehaviourError(
-              "connected source with " + tuple.getValue().getSize() + " outputs"
-              + " to target with " + nInputs + " inputs");
+      return nInputs;
+    } else {
+      throw new UndefinedBehaviourError(
+          "cannot elaborate edge " + edge.toString()
+          + " due to unhandled type");
+    }
+  }
+
+  // Creates the connections for an edge that countConnections() has
+  // already checked, storing connection number `first` and onwards
+  // into connIDs/conns. Touches no shared state besides those slots.
+  private static void elaborateEdge(ExpressionEdge edge,
+      ConnectionContext ctx, int first, String[] connIDs,
+      ConnectionValue[] conns)
+      throws UndeclaredIdentifierException, UndeclaredAttributeException, 
+      InvalidAttributeException, TypeMismatchException {
+    if (!(edge.getTarget() instanceof PrimitiveFunctionVertex)) {
+      return;
+    }
+    PrimitiveFunctionVertex target = (PrimitiveFunctionVertex) edge.getTarget();
+    ExpressionVertex vSource = edge.getSource();
+    if (edge.getType() instanceof BooleanTypeValue) {
+      PrimitiveFunctionVertex source = (PrimitiveFunctionVertex) vSource;
+      elaborateConnection(ctx, source, 0, target, 0, first, connIDs, conns);
+    } else if (vSource instanceof PrimitiveFunctionVertex) {
+      PrimitiveFunctionVertex source = (PrimitiveFunctionVertex) vSource;
+      // connect source 0 to target 0, etc.
+      int nInputs = target.getNumberOfPortsOfType(ctx.inputType);
+      for (int i = 0; i < nInputs; ++i) {
+        elaborateConnection(ctx, source, i, target, i, first + i,
+            connIDs, conns);
+      }
+    } else {
+      TupleValueVertex tuple = (TupleValueVertex) vSource;
+      // in general this does not scale, but for 
+      // simple connections it is fine
+      int nInputs = target.getNumberOfPortsOfType(ctx.inputType);
+      for (int i = 0; i < nInputs; ++i) {
+        ExpressionEdge sourceEdge = tuple.getValueEdges().get(i);
+        // again, this does not scale, but it is simple enough to be clear
+        PrimitiveFunctionVertex source 
+          = (PrimitiveFunctionVertex) sourceEdge.getSource();  
+        elaborateConnection(ctx, source, 0, target, i, first + i,
+            connIDs, conns);
+      }
+    }
+  }
+
+  // Connects the n-th output of `source` to the m-th input of `target`
+  // as connection number `uuid`.
+  private static void elaborateConnection(ConnectionContext ctx,
+      PrimitiveFunctionVertex source, int n,
+      PrimitiveFunctionVertex target, int m,
+      int uuid, String[] connIDs, ConnectionValue[] conns)
+      throws UndeclaredIdentifierException, UndeclaredAttributeException, 
+      InvalidAttributeException, TypeMismatchException {
+    String sourcePortName = source.getNthPortOfType(ctx.outputType, n);
+    PortValue sourcePort = source.getNodeValue().getPort(sourcePortName);
+    String targetPortName = target.getNthPortOfType(ctx.inputType, m);
+    PortValue targetPort = target.getNodeValue().getPort(targetPortName);
+    conns[uuid] = new ConnectionValue(
+        ctx.connType, sourcePort, targetPort, ctx.noAttributes);
+    connIDs[uuid] = "n" + Integer.toString(uuid) 
+        + "_" + source.getInstanceName() 
+        + "_" + sourcePortName 
+        + "__" + target.getInstanceName()
+        + "_" + targetPortName;
+  }
+
+  // Below this many vertices or edges, parallel elaboration stops splitting.
+  private static final int PARALLEL_GRAIN = 1024;
+
+  // Base class for elaboration tasks. Elaboration throws checked exceptions,
+  // which a RecursiveAction cannot; the first one thrown by any subtask is
+  // kept here instead and rethrown by the caller once the pool is done.
+  private abstract static class ElaborationAction extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    protected final AtomicReference<SchematicException> failure;
+
+    public ElaborationAction(AtomicReference<SchematicException> failure) {
+      this.failure = failure;
+    }
+
+    protected void fail(SchematicException e) {
+      failure.compareAndSet(null, e);
+    }
+
+    protected boolean failed() {
+      return failure.get() != null;
+    }
+  }
+
+  // Elaborates primitiveFunctionVertices [lo, hi).
+  private class ElaboratePrimitivesAction extends ElaborationAction {
+    private static final long serialVersionUID = 1L;
+
+    private final int lo;
+    private final int hi;
+
+    public ElaboratePrimitivesAction(int lo, int hi) {
+      this(new AtomicReference<SchematicException>(), lo, hi);
+    }
+
+    private ElaboratePrimitivesAction(
+        AtomicReference<SchematicException> failure, int lo, int hi) {
+      super(failure);
+      this.lo = lo;
+      this.hi = hi;
+    }
+
+    @Override
+    protected void compute() {
+      if (hi - lo <= PARALLEL_GRAIN) {
+        for (int i = lo; i < hi && !failed(); ++i) {
+          try {
+            primitiveFunctionVertices.get(i).elaborate();
+          } catch (SchematicException e) {
+            fail(e);
+          }
         }
-        // in general this does not scale, but for 
-        // simple connections it is fine
-        for (int i = 0; i < nInputs; ++i) {
-          ExpressionEdge sourceEdge = tuple.getValueEdges().get(i);
-          // again, this does not scale, but it is simple enough to be clear
-          PrimitiveFunctionVertex source 
-            = (PrimitiveFunctionVertex) sourceEdge.getSource();  
-          
-          String sourcePortName = source.getNthPortOfType(outputType, 0);
-          PortValue sourcePort = source.getNodeValue().getPort(sourcePortName);
-          String targetPortName = target.getNthPortOfType(inputType, i);
-          PortValue targetPort = target.getNodeValue().getPort(targetPortName);
-          ConnectionValue conn = new ConnectionValue(
-              connType, sourcePort, targetPort, noAttributes);
-          String connID = "n" + Integer.toString(uuid) 
-              + "_" + source.getInstanceName() 
-              + "_" + sourcePortName 
-              + "__" + target.getInstanceName()
-              + "_" + targetPortName;
-          uuid += 1;
-          connections.put(connID, conn);
+      } else {
+        int mid = (lo + hi) >>> 1;
+        invokeAll(new ElaboratePrimitivesAction(failure, lo, mid),
+            new ElaboratePrimitivesAction(failure, mid, hi));
+      }
+    }
+
+    public void rethrow() throws SchematicException {
+      if (failed()) {
+        throw failure.get();
+      }
+    }
+  }
+
+  // Elaborates the connections of edges [lo, hi).
+  private class ElaborateConnectionsAction extends ElaborationAction {
+    private static final long serialVersionUID = 1L;
+
+    private final ConnectionContext ctx;
+    private final int[] firstConnection;
+    private final String[] connIDs;
+    private final ConnectionValue[] conns;
+    private final int lo;
+    private final int hi;
+
+    public ElaborateConnectionsAction(ConnectionContext ctx,
+        int[] firstConnection, String[] connIDs, ConnectionValue[] conns,
+        int lo, int hi) {
+      this(new AtomicReference<SchematicException>(), ctx, firstConnection,
+          connIDs, conns, lo, hi);
+    }
+
+    private ElaborateConnectionsAction(
+        AtomicReference<SchematicException> failure, ConnectionContext ctx,
+        int[] firstConnection, String[] connIDs, ConnectionValue[] conns,
+        int lo, int hi) {
+      super(failure);
+      this.ctx = ctx;
+      this.firstConnection = firstConnection;
+      this.connIDs = connIDs;
+      this.conns = conns;
+      this.lo = lo;
+      this.hi = hi;
+    }
+
+    @Override
+    protected void compute() {
+      if (hi - lo <= PARALLEL_GRAIN) {
+        for (int i = lo; i < hi && !failed(); ++i) {
+          try {
+            elaborateEdge(edges.get(i), ctx, firstConnection[i],
+                connIDs, conns);
+          } catch (SchematicException e) {
+            fail(e);
+          }
         }
       } else {
-        throw new UndefinedBehaviourError(
-            "cannot elaborate edge " + edge.toString()
-            + " due to unhandled type");
+        int mid = (lo + hi) >>> 1;
+        invokeAll(new ElaborateConnectionsAction(failure, ctx,
+            firstConnection, connIDs, conns, lo, mid),
+            new ElaborateConnectionsAction(failure, ctx,
+                firstConnection, connIDs, conns, mid, hi));
+      }
+    }
+
+    // elaborateEdge() only throws these four kinds of exception
+    public void rethrow() throws UndeclaredIdentifierException,
+        UndeclaredAttributeException, InvalidAttributeException,
+        TypeMismatchException {
+      SchematicException e = failure.get();
+      if (e == null) {
+        return;
+      } else if (e instanceof UndeclaredIdentifierException) {
+        throw (UndeclaredIdentifierException) e;
+      } else if (e instanceof UndeclaredAttributeException) {
+        throw (UndeclaredAttributeException) e;
+      } else if (e instanceof InvalidAttributeException) {
+        throw (InvalidAttributeException) e;
+      } else {
+        throw (TypeMismatchException) e;
       }
     }
   }
@@ -293,7 +673,7 @@ public class ExpressionGraph implements ExpressionVisitor, ValueVisitor {
     // get the edge coming from the input
     ExpressionEdge inputEdge = lastSourceEdge;
     // evaluate the expression and visit its value
-    Value funcValue = funcExpr.getValue(scope);
+    Value funcValue = scope.getExpressionValue(funcExpr);
     funcValue.accept(this);
     // get the edge coming from the function
     ExpressionEdge funcEdge = lastSourceEdge;
@@ -317,6 +697,21 @@ public class ExpressionGraph implements ExpressionVisitor, ValueVisitor {
     rvalue.accept(this);
     // get the edge coming from the source
     ExpressionEdge sourceEdge = lastSourceEdge;
+    if (resolveVariablesEagerly
+        && lvalue instanceof VariableReferenceExpression) {
+      // remember where the value comes from, instead of
+      // routing it through a vertex for the variable
+      VariableIdentifier id =
+          ((VariableReferenceExpression) lvalue).getIdentifier();
+      if (variableDefinitions.containsKey(id)) {
+        throw new UndefinedBehaviourError(
+            "multiply assigned variable '" + id.toString() + "'");
+      }
+      variableDefinitions.put(id, sourceEdge);
+      removeEdge(sourceEdge);
+      lastSourceEdge = resolveVariableReference(id); // "a = b = c;"
+      return;
+    }
     // then visit the target
     lvalue.accept(this);
     // get the edge coming from the target (so that we can find the target)
@@ -330,6 +725,10 @@ public class ExpressionGraph implements ExpressionVisitor, ValueVisitor {
   @Override
   public void visit(VariableReferenceExpression variableReferenceExpression) {
     VariableIdentifier id = variableReferenceExpression.getIdentifier();
+    if (resolveVariablesEagerly) {
+      lastSourceEdge = resolveVariableReference(id);
+      return;
+    }
     VariableReferenceVertex source;
     if (!variableVertices.containsKey(id)) {
       source = new VariableReferenceVertex(id);
@@ -339,7 +738,7 @@ public class ExpressionGraph implements ExpressionVisitor, ValueVisitor {
     }
     ExpressionEdge edgeVariableOut = new ExpressionEdge(source, null,
         variableReferenceExpression.getType(scope));
-    edges.add(edgeVariableOut);
+    addEdge(edgeVariableOut);
     lastSourceEdge = edgeVariableOut;
   }
 
@@ -355,7 +754,7 @@ public class ExpressionGraph implements ExpressionVisitor, ValueVisitor {
     FunctionTypeValue fType = (FunctionTypeValue) pFunc.getType();
     ExpressionEdge edgeFunctionOut = new ExpressionEdge(pVertex, null,
         fType.getOutputType());
-    edges.add(edgeFunctionOut);
+    addEdge(edgeFunctionOut);
     lastSourceEdge = edgeFunctionOut;
   }
 
@@ -374,7 +773,7 @@ public class ExpressionGraph implements ExpressionVisitor, ValueVisitor {
     }
     ExpressionEdge edgeTupleOut = new ExpressionEdge(tupleVertex, null,
         tuple.getType());
-    edges.add(edgeTupleOut);
+    addEdge(edgeTupleOut);
     lastSourceEdge = edgeTupleOut;
   }
 
@@ -22,7 +22,7 @@ public class FunctionInvocationExpression extends Expression {
   }
   
   private FunctionValue getFunctionValue(Scope scope) {
-    return functionExpression.evaluate(scope, FunctionValue.class);
+    return (FunctionValue) scope.getExpressionValue(functionExpression);
   }
   
   private FunctionTypeValue getFunctionTypeValue(Scope scope) {
@@ -1,16 +1,33 @@
 package org.manifold.compiler.front;
 
+import java.util.Objects;
+
 import org.manifold.compiler.TypeValue;
 import org.manifold.compiler.ValueVisitor;
 
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+
 public class FunctionTypeValue extends TypeValue {
+
+  // One canonical instance per (input, output) pair; see TupleTypeValue.
+  private static final Interner<FunctionTypeValue> instances =
+      Interners.newWeakInterner();
+
+  public static FunctionTypeValue getInstance(TypeValue inputType,
+      TypeValue outputType) {
+    return instances.intern(new FunctionTypeValue(inputType, outputType));
+  }
   
   private final TypeValue inputType;
   private final TypeValue outputType;
+  private final int hash;
 
-  public FunctionTypeValue(TypeValue inputType, TypeValue outputType) {
+  private FunctionTypeValue(TypeValue inputType, TypeValue outputType) {
     this.inputType = inputType;
     this.outputType = outputType;
+    this.hash = 31 * Objects.hashCode(inputType)
+        + Objects.hashCode(outputType);
   }
 
   public TypeValue getInputType() {
@@ -26,6 +43,7 @@ public class FunctionTypeValue extends TypeValue {
     visitor.visit(this);
   }
   
+  @Override
   public boolean equals(Object o) {
     if (o == this) {
       return true;
@@ -33,8 +51,14 @@ public class FunctionTypeValue extends TypeValue {
       return false;
     }
     FunctionTypeValue other = (FunctionTypeValue) o;
-    return inputType.equals(other.inputType) &&
-        outputType.equals(other.outputType);
+    return hash == other.hash &&
+        Objects.equals(inputType, other.inputType) &&
+        Objects.equals(outputType, other.outputType);
+  }
+
+  @Override
+  public int hashCode() {
+    return hash;
   }
 
   @Override
@@ -46,7 +70,7 @@ public class FunctionTypeValue extends TypeValue {
       return false;
     }
     if (!(other instanceof FunctionTypeValue)) {
-      return getSupertype().isSubtypeOf(other);
+      return hasAncestor(other);
     }
     FunctionTypeValue oFn = (FunctionTypeValue) other;
     // One way: a function is a subtype of oFn if it can be used where oFn
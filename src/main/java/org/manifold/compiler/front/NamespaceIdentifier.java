@@ -1,8 +1,11 @@
 package org.manifold.compiler.front;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
+import org.manifold.compiler.SymbolTable;
+
 public class NamespaceIdentifier {
 
   public static String getSeparator(){
@@ -11,20 +14,47 @@ public class NamespaceIdentifier {
     return ":";
   }
 
+  // the parts of the name, interned; copied, so that the cached hash
+  // cannot go stale
   private final List<String> name;
+  // symbols[i] is the symbol of name.get(i) in the compiler's SymbolTable
+  private final int[] symbols;
+  private final int hash;
 
   public NamespaceIdentifier(String name) {
-    this.name = Arrays.asList(name.split(getSeparator()));
+    this(Arrays.asList(name.split(getSeparator())));
   }
 
   public NamespaceIdentifier(List<String> name) {
-    this.name = java.util.Collections.unmodifiableList(name);
+    List<String> parts = new ArrayList<>(name.size());
+    SymbolTable table = SymbolTable.getInstance();
+    this.symbols = new int[name.size()];
+    for (String n : name) {
+      symbols[parts.size()] = table.intern(n);
+      parts.add(table.getName(symbols[parts.size()]));
+    }
+    this.name = java.util.Collections.unmodifiableList(parts);
+    int h = 1;
+    for (String n : parts) {
+      h = h * 17 + n.hashCode();
+    }
+    this.hash = h;
   }
 
   public List<String> getName() {
     return name;
   }
 
+  // The number of parts of the name.
+  public int size() {
+    return symbols.length;
+  }
+
+  // The symbol of the i-th part of the name; see SymbolTable.
+  public int getSymbol(int i) {
+    return symbols[i];
+  }
+
   @Override
   public String toString(){
     // TODO this is syntax-dependent
@@ -43,10 +73,6 @@ public class NamespaceIdentifier {
 
   @Override
   public int hashCode(){
-    int hash = 1;
-    for (String n : name){
-      hash = hash * 17 + n.hashCode();
-    }
     return hash;
   }
 
@@ -59,7 +85,7 @@ public class NamespaceIdentifier {
     } else {
       NamespaceIdentifier that = (NamespaceIdentifier) aThat;
       // two namespace identifiers are equal if they name the same namespace
-      return this.getName().equals(that.getName());
+      return this.hash == that.hash && this.getName().equals(that.getName());
     }
   }
 
@@ -0,0 +1,101 @@
+package org.manifold.compiler.front;
+
+import java.util.Arrays;
+
+/**
+ * The namespaces known to the compiler, stored as a trie over the parts of
+ * their names. Each part is looked up by its symbol (see SymbolTable),
+ * which NamespaceIdentifier works out once when it is made, so resolving
+ * a qualified name like a:b:c costs one step per part and hashes no
+ * strings.
+ *
+ * The root of the trie is the namespace with the empty name. A registry is
+ * not synchronized; like Scope, it belongs to one elaboration.
+ */
+public class NamespaceRegistry {
+
+  private static class Node {
+    // children, sorted by the symbol of the part leading to them
+    private int[] parts = new int[0];
+    private Node[] children = new Node[0];
+    private Namespace namespace = null;
+
+    public Node getChild(int part) {
+      int i = Arrays.binarySearch(parts, part);
+      return i < 0 ? null : children[i];
+    }
+
+    public Node getOrAddChild(int part) {
+      int i = Arrays.binarySearch(parts, part);
+      if (i >= 0) {
+        return children[i];
+      }
+      i = -(i + 1);
+      int[] newParts = new int[parts.length + 1];
+      Node[] newChildren = new Node[children.length + 1];
+      System.arraycopy(parts, 0, newParts, 0, i);
+      System.arraycopy(children, 0, newChildren, 0, i);
+      newParts[i] = part;
+      newChildren[i] = new Node();
+      System.arraycopy(parts, i, newParts, i + 1, parts.length - i);
+      System.arraycopy(children, i, newChildren, i + 1, children.length - i);
+      parts = newParts;
+      children = newChildren;
+      return newChildren[i];
+    }
+  }
+
+  private final Node root = new Node();
+  private int size = 0;
+
+  // Returns the namespace with the given name, creating it (but not the
+  // namespaces above it) if there is none yet.
+  public Namespace define(NamespaceIdentifier name) {
+    Node node = root;
+    for (int i = 0; i < name.size(); ++i) {
+      node = node.getOrAddChild(name.getSymbol(i));
+    }
+    if (node.namespace == null) {
+      node.namespace = new Namespace(name);
+      size += 1;
+    }
+    return node.namespace;
+  }
+
+  // Returns the namespace with the given name, or null if it has not been
+  // defined.
+  public Namespace getNamespace(NamespaceIdentifier name) {
+    Node node = root;
+    for (int i = 0; i < name.size() && node != null; ++i) {
+      node = node.getChild(name.getSymbol(i));
+    }
+    return node == null ? null : node.namespace;
+  }
+
+  public boolean isDefined(NamespaceIdentifier name) {
+    return getNamespace(name) != null;
+  }
+
+  // The number of namespaces defined.
+  public int size() {
+    return size;
+  }
+
+  // Resolves a qualified identifier: finds its namespace, then the name in
+  // that namespace's public scope (where names are stored unqualified).
+  // Once the identifier has been resolved, this allocates nothing.
+  public Variable getVariable(VariableIdentifier identifier)
+      throws VariableNotDefinedException {
+    Namespace namespace = getNamespace(identifier.getNamespaceIdentifier());
+    if (namespace == null) {
+      throw new VariableNotDefinedException(identifier);
+    }
+    try {
+      return namespace.getPublicScope().getVariable(
+          identifier.getUnqualified());
+    } catch (VariableNotDefinedException e) {
+      throw new VariableNotDefinedException(identifier);
+    }
+  }
+
+}
@@ -0,0 +1,286 @@
+package org.manifold.compiler.front;
+
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * An immutable hash map that shares structure between versions: plus()
+ * returns a new map and leaves this one as it was, copying only the
+ * O(log n) nodes on the path to the changed entry. Implemented as a hash
+ * array mapped trie; every level consumes 5 bits of the key's hash.
+ *
+ * Scopes use this for their symbol tables, so that an empty child scope
+ * costs no table of its own and a snapshot of a scope is free.
+ */
+final class PersistentMap<K, V> {
+
+  private static final int BITS = 5;
+  private static final int MASK = (1 << BITS) - 1;
+
+  private static final PersistentMap<Object, Object> empty =
+      new PersistentMap<>(null, 0);
+
+  @SuppressWarnings("unchecked")
+  public static <K, V> PersistentMap<K, V> empty() {
+    return (PersistentMap<K, V>) empty;
+  }
+
+  private final Node root;
+  private final int size;
+
+  private PersistentMap(Node root, int size) {
+    this.root = root;
+    this.size = size;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  @SuppressWarnings("unchecked")
+  public V get(Object key) {
+    if (root == null) {
+      return null;
+    }
+    return (V) root.find(0, hash(key), key);
+  }
+
+  public boolean containsKey(Object key) {
+    return get(key) != null;
+  }
+
+  // Returns a map that also maps `key` to `value` (which must not be null).
+  public PersistentMap<K, V> plus(K key, V value) {
+    if (value == null) {
+      throw new NullPointerException();
+    }
+    boolean[] added = new boolean[1];
+    Node start = root == null ? BitmapNode.empty : root;
+    Node newRoot = start.put(0, hash(key), key, value, added);
+    if (newRoot == root) {
+      return this;
+    }
+    return new PersistentMap<>(newRoot, added[0] ? size + 1 : size);
+  }
+
+  // A read-only view of the keys, in no particular order.
+  public Set<K> keySet() {
+    return new AbstractSet<K>() {
+      @Override
+      public int size() {
+        return size;
+      }
+
+      @Override
+      public boolean contains(Object key) {
+        return containsKey(key);
+      }
+
+      @Override
+      @SuppressWarnings("unchecked")
+      public Iterator<K> iterator() {
+        List<Object> keys = new ArrayList<>(size);
+        if (root != null) {
+          root.collectKeys(keys);
+        }
+        // the list is private to this iterator, so removal cannot reach it
+        final Iterator<Object> it = keys.iterator();
+        return new Iterator<K>() {
+          @Override
+          public boolean hasNext() {
+            return it.hasNext();
+          }
+
+          @Override
+          public K next() {
+            return (K) it.next();
+          }
+
+          @Override
+          public void remove() {
+            throw new UnsupportedOperationException();
+          }
+        };
+      }
+    };
+  }
+
+  private static int hash(Object key) {
+    int h = key.hashCode();
+    return h ^ (h >>> 16);
+  }
+
+  private abstract static class Node {
+    // Returns the value for `key`, or null.
+    public abstract Object find(int shift, int hash, Object key);
+
+    // Returns a node that also maps `key` to `value`, or this node if it
+    // already did; sets added[0] if the key is new.
+    public abstract Node put(int shift, int hash, Object key, Object value,
+        boolean[] added);
+
+    public abstract void collectKeys(List<Object> keys);
+  }
+
+  // An interior node holding up to 32 entries, one per 5-bit chunk of the
+  // hash that is present. Entry i is array[2i], array[2i + 1]: a key and
+  // its value, or null and the node for all keys sharing that chunk.
+  private static final class BitmapNode extends Node {
+    private static final BitmapNode empty =
+        new BitmapNode(0, new Object[0]);
+
+    private final int bitmap;
+    private final Object[] array;
+
+    public BitmapNode(int bitmap, Object[] array) {
+      this.bitmap = bitmap;
+      this.array = array;
+    }
+
+    private int index(int bit) {
+      return Integer.bitCount(bitmap & (bit - 1));
+    }
+
+    @Override
+    public Object find(int shift, int hash, Object key) {
+      int bit = 1 << ((hash >>> shift) & MASK);
+      if ((bitmap & bit) == 0) {
+        return null;
+      }
+      int i = index(bit);
+      Object k = array[2 * i];
+      Object v = array[2 * i + 1];
+      if (k == null) {
+        return ((Node) v).find(shift + BITS, hash, key);
+      }
+      return key.equals(k) ? v : null;
+    }
+
+    @Override
+    public Node put(int shift, int hash, Object key, Object value,
+        boolean[] added) {
+      int bit = 1 << ((hash >>> shift) & MASK);
+      int i = index(bit);
+      if ((bitmap & bit) == 0) {
+        Object[] newArray = new Object[array.length + 2];
+        System.arraycopy(array, 0, newArray, 0, 2 * i);
+        newArray[2 * i] = key;
+        newArray[2 * i + 1] = value;
+        System.arraycopy(array, 2 * i, newArray, 2 * i + 2,
+            array.length - 2 * i);
+        added[0] = true;
+        return new BitmapNode(bitmap | bit, newArray);
+      }
+      Object k = array[2 * i];
+      Object v = array[2 * i + 1];
+      if (k == null) {
+        Node child = ((Node) v).put(shift + BITS, hash, key, value, added);
+        return child == v ? this : with(2 * i + 1, child);
+      }
+      if (key.equals(k)) {
+        return value == v ? this : with(2 * i + 1, value);
+      }
+      // two keys share this chunk: push both one level down
+      added[0] = true;
+      Node child = pair(shift + BITS, k, v, hash, key, value);
+      Object[] newArray = array.clone();
+      newArray[2 * i] = null;
+      newArray[2 * i + 1] = child;
+      return new BitmapNode(bitmap, newArray);
+    }
+
+    private BitmapNode with(int index, Object item) {
+      Object[] newArray = array.clone();
+      newArray[index] = item;
+      return new BitmapNode(bitmap, newArray);
+    }
+
+    private static Node pair(int shift, Object k1, Object v1,
+        int h2, Object k2, Object v2) {
+      int h1 = hash(k1);
+      if (h1 == h2) {
+        return new CollisionNode(h1, new Object[] {k1, v1, k2, v2});
+      }
+      // the hashes differ in some chunk at or below bit 31, so this ends
+      // before the shift runs past the hash
+      boolean[] unused = new boolean[1];
+      return empty.put(shift, h1, k1, v1, unused)
+          .put(shift, h2, k2, v2, unused);
+    }
+
+    @Override
+    public void collectKeys(List<Object> keys) {
+      for (int i = 0; i < array.length; i += 2) {
+        if (array[i] == null) {
+          ((Node) array[i + 1]).collectKeys(keys);
+        } else {
+          keys.add(array[i]);
+        }
+      }
+    }
+  }
+
+  // A leaf for distinct keys with the same full hash, searched linearly.
+  private static final class CollisionNode extends Node {
+    private final int hash;
+    // keys and values, alternating
+    private final Object[] array;
+
+    public CollisionNode(int hash, Object[] array) {
+      this.hash = hash;
+      this.array = array;
+    }
+
+    @Override
+    public Object find(int shift, int hash, Object key) {
+      for (int i = 0; i < array.length; i += 2) {
+        if (key.equals(array[i])) {
+          return array[i + 1];
+        }
+      }
+      return null;
+    }
+
+    @Override
+    public Node put(int shift, int hash, Object key, Object value,
+        boolean[] added) {
+      if (hash != this.hash) {
+        // move this node under a bitmap node and add the key beside it
+        Node parent = new BitmapNode(1 << ((this.hash >>> shift) & MASK),
+            new Object[] {null, this});
+        return parent.put(shift, hash, key, value, added);
+      }
+      for (int i = 0; i < array.length; i += 2) {
+        if (key.equals(array[i])) {
+          if (array[i + 1] == value) {
+            return this;
+          }
+          Object[] newArray = array.clone();
+          newArray[i + 1] = value;
+          return new CollisionNode(hash, newArray);
+        }
+      }
+      Object[] newArray = Arrays.copyOf(array, array.length + 2);
+      newArray[array.length] = key;
+      newArray[array.length + 1] = value;
+      added[0] = true;
+      return new CollisionNode(hash, newArray);
+    }
+
+    @Override
+    public void collectKeys(List<Object> keys) {
+      for (int i = 0; i < array.length; i += 2) {
+        keys.add(array[i]);
+      }
+    }
+  }
+
+}
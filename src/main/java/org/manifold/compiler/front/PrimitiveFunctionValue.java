@@ -19,6 +19,9 @@ public class PrimitiveFunctionValue extends FunctionValue {
   }
   
   private NodeTypeValue nodeType;
+  public NodeTypeValue getNodeType() {
+    return nodeType;
+  }
   
   public PrimitiveFunctionValue(String primitiveName, 
       FunctionTypeValue type, NodeTypeValue nodeType) { 
@@ -1,10 +1,7 @@
 package org.manifold.compiler.front;
 
-import java.util.Map.Entry;
-
 import org.manifold.compiler.NodeValue;
 import org.manifold.compiler.PortTypeValue;
-import org.manifold.compiler.PortValue;
 import org.manifold.compiler.middle.SchematicException;
 
 public class PrimitiveFunctionVertex extends ExpressionVertex {
@@ -39,29 +36,15 @@ public class PrimitiveFunctionVertex extends ExpressionVertex {
     return function.getPrimitiveName() + Integer.toString(uniqueSuffix);
   }
   
+  // Port lookups go through the node type's port index, so they cost
+  // an array access rather than a scan over the node's ports.
+
   public int getNumberOfPortsOfType(PortTypeValue portType) {
-    int i = 0;
-    for (PortValue port : elaboratedNode.getPorts().values()) {
-      if (port.getType().isSubtypeOf(portType)) {
-        ++i;
-      }
-    }
-    return i;
+    return function.getNodeType().getNumberOfPortsOfType(portType);
   }
   
   public String getNthPortOfType(PortTypeValue portType, int n) {
-    int i = 0;
-    for (Entry<String, PortValue> entry : 
-      elaboratedNode.getPorts().entrySet()) {
-      if (entry.getValue().getType().isSubtypeOf(portType)) {
-        if (i == n){
-          return entry.getKey(); 
-        } else {
-          ++i;
-        }
-      }
-    }
-    throw new ArrayIndexOutOfBoundsException(n);
+    return function.getNodeType().getNthPortOfType(portType, n);
   }
   
 }
@@ -1,6 +1,9 @@
 package org.manifold.compiler.front;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -9,26 +12,73 @@ import org.manifold.compiler.Value;
 
 public class Scope {
   private final Scope parentScope;
-  private final Map<VariableIdentifier, Variable> symbolTable;
+  // Persistent, so a new scope shares the one empty table and a snapshot
+  // shares its original's table; defining a variable makes a new version.
+  private PersistentMap<VariableIdentifier, Variable> symbolTable =
+      PersistentMap.empty();
+  // The variables of this scope in order of definition; a variable's
+  // position here is its slot (see getVariable(int, int)). Only the first
+  // `slotCount` entries belong to this scope: a snapshot starts out sharing
+  // the list with its original, and whichever of the two defines a variable
+  // second copies its part of the list first.
+  private List<Variable> slots = Collections.emptyList();
+  private int slotCount = 0;
+
+  // Counts the changes made to any scope in a tree of scopes: all changes
+  // (definitions and assignments), and definitions alone. Shared by a root
+  // scope and all of its descendants.
+  private static class Generation {
+    private int count = 0;
+    private int definitions = 0;
+  }
+
+  private final Generation generation;
+  // Results of getExpressionValue() and getExpressionType() for this scope,
+  // keyed by expression identity; made on first use. They were computed at
+  // generation `cachedGeneration`, and are dropped as soon as anything in
+  // the tree has changed since then: a new definition can shadow a name,
+  // and a new assignment can give a value to a variable that had none.
+  private Map<Expression, Value> values = null;
+  private Map<Expression, TypeValue> types = null;
+  private int cachedGeneration = 0;
 
   public Set<VariableIdentifier> getSymbolIdentifiers() {
     return symbolTable.keySet();
   }
   
   public Scope(Scope parentScope) {
-    this.symbolTable = new HashMap<>();
+    this(parentScope, parentScope == null ? new Generation()
+        : parentScope.generation);
+  }
+
+  private Scope(Scope parentScope, Generation generation) {
     this.parentScope = parentScope;
+    this.generation = generation;
+    this.cachedGeneration = generation.count;
   }
 
   public Scope() {
-    this.symbolTable = new HashMap<>();
-    this.parentScope = null;
+    this(null);
   }
 
   public Scope getParentScope() {
     return parentScope;
   }
 
+  // Returns a copy of this scope, with the same parent and the same
+  // variables. Variables defined afterwards in either one are not seen by
+  // the other; the variables they share are the same objects, so an
+  // assignment to one of those is seen by both. Takes constant time.
+  public Scope snapshot() {
+    // the copy shares this scope's generation even at the root, since an
+    // assignment through it changes variables that belong to this scope
+    Scope copy = new Scope(parentScope, generation);
+    copy.symbolTable = symbolTable;
+    copy.slots = slots;
+    copy.slotCount = slotCount;
+    return copy;
+  }
+
   public void defineVariable(VariableIdentifier identifier,
       Expression typeExpression) throws MultipleDefinitionException {
     // TODO this does not handle namespaces correctly
@@ -40,7 +90,16 @@ public class Scope {
     // naturally, variable shadowing is allowed -- "closer" scopes hide
     // "further" ones
     Variable v = new Variable(this, identifier, typeExpression);
-    symbolTable.put(identifier, v);
+    if (slots.size() != slotCount || slotCount == 0) {
+      // shared with a snapshot that has moved on, or not made yet
+      slots = new ArrayList<>(slots.subList(0, slotCount));
+    }
+    v.setSlot(slotCount);
+    slots.add(v);
+    slotCount += 1;
+    symbolTable = symbolTable.plus(identifier, v);
+    generation.definitions += 1;
+    changed();
   }
 
   public boolean isVariableDefined(VariableIdentifier identifier) {
@@ -61,17 +120,45 @@ public class Scope {
   public Variable getVariable(VariableIdentifier identifier)
       throws VariableNotDefinedException {
     // TODO this does not handle namespaces correctly
-    Variable v = symbolTable.get(identifier);
-    if (v == null) {
-      // no such variable in this scope; check parent scope
-      if (parentScope == null) {
-        throw new VariableNotDefinedException(identifier);
-      } else {
-        return parentScope.getVariable(identifier);
+    for (Scope s = this; s != null; s = s.parentScope) {
+      Variable v = s.symbolTable.get(identifier);
+      if (v != null) {
+        return v;
       }
-    } else {
-      return v;
     }
+    throw new VariableNotDefinedException(identifier);
+  }
+
+  // Returns the variable at a lexical address: the given slot of the scope
+  // `depth` levels up from this one. Addresses come from resolving an
+  // identifier with getDepth() and getVariable(VariableIdentifier); see
+  // VariableReferenceExpression.
+  Variable getVariable(int depth, int slot) {
+    Scope s = this;
+    for (int i = 0; i < depth; ++i) {
+      s = s.parentScope;
+    }
+    return s.slots.get(slot);
+  }
+
+  // Returns how many scopes up from this one `identifier` is defined.
+  int getDepth(VariableIdentifier identifier)
+      throws VariableNotDefinedException {
+    int depth = 0;
+    for (Scope s = this; s != null; s = s.parentScope) {
+      if (s.symbolTable.containsKey(identifier)) {
+        return depth;
+      }
+      depth += 1;
+    }
+    throw new VariableNotDefinedException(identifier);
+  }
+
+  // The number of definitions made so far in this tree of scopes. A lexical
+  // address stays valid as long as this does not change, since any new
+  // definition might shadow the variable it points to.
+  int getDefinitionCount() {
+    return generation.definitions;
   }
 
   public Value getVariableValue(VariableIdentifier identifier)
@@ -86,4 +173,47 @@ public class Scope {
     v.setValueExpression(valueExpression);
   }
 
+  // Returns expression.getValue(this), evaluating it only once for as long
+  // as no scope in this tree changes.
+  public Value getExpressionValue(Expression expression) {
+    checkGeneration();
+    if (values == null) {
+      values = new IdentityHashMap<>();
+    }
+    Value value = values.get(expression);
+    if (value == null && !values.containsKey(expression)) {
+      value = expression.getValue(this);
+      values.put(expression, value);
+    }
+    return value;
+  }
+
+  // Returns expression.getType(this), with the same caching as
+  // getExpressionValue().
+  public TypeValue getExpressionType(Expression expression) {
+    checkGeneration();
+    if (types == null) {
+      types = new IdentityHashMap<>();
+    }
+    TypeValue type = types.get(expression);
+    if (type == null && !types.containsKey(expression)) {
+      type = expression.getType(this);
+      types.put(expression, type);
+    }
+    return type;
+  }
+
+  // Called whenever a variable is defined or assigned in this scope.
+  void changed() {
+    generation.count += 1;
+  }
+
+  private void checkGeneration() {
+    if (cachedGeneration != generation.count) {
+      values = null;
+      types = null;
+      cachedGeneration = generation.count;
+    }
+  }
+
 }
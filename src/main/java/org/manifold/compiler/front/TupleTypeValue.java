@@ -1,25 +1,42 @@
 package org.manifold.compiler.front;
 
+import java.util.Arrays;
 import java.util.List;
 
 import org.manifold.compiler.TypeValue;
 import org.manifold.compiler.ValueVisitor;
 
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+
 public class TupleTypeValue extends TypeValue {
 
-  private final List<TypeValue> subtypes;
+  // One canonical instance per sequence of entry types, so that equal tuple
+  // types are the same object. Unused types are dropped by the collector.
+  private static final Interner<TupleTypeValue> instances =
+      Interners.newWeakInterner();
+
+  public static TupleTypeValue getInstance(List<TypeValue> subtypes) {
+    return instances.intern(new TupleTypeValue(
+        subtypes.toArray(new TypeValue[subtypes.size()])));
+  }
+
+  // entry types are canonical too, so comparing them with equals() is
+  // cheap; an entry may be null if its type is not yet known
+  private final TypeValue[] subtypes;
+  private final int hash;
   
   public int getSize() {
-    return subtypes.size();
+    return subtypes.length;
   }
   
   public TypeValue entry(int i){
-    return subtypes.get(i);
+    return subtypes[i];
   }
   
-  public TupleTypeValue(List<TypeValue> subtypes) {
-    //this.subtypes = ImmutableList.copyOf(subtypes);
+  private TupleTypeValue(TypeValue[] subtypes) {
     this.subtypes = subtypes;
+    this.hash = Arrays.hashCode(subtypes);
   }
   
   @Override
@@ -31,18 +48,12 @@ public class TupleTypeValue extends TypeValue {
       return false;
     }
     TupleTypeValue oTuple = (TupleTypeValue) other;
-    if (!(getSize() != oTuple.getSize())) {
-      return false;
-    }
-    // type-check subexpressions for equality
-    for (int i = 0; i < getSize(); ++i) {
-      TypeValue myType = entry(i).getType();
-      TypeValue otherType = oTuple.entry(i).getType();
-      if (!myType.equals(otherType)) {
-        return false;
-      }
-    }
-    return true;
+    return hash == oTuple.hash && Arrays.equals(subtypes, oTuple.subtypes);
+  }
+
+  @Override
+  public int hashCode() {
+    return hash;
   }
 
   @Override
@@ -54,17 +65,17 @@ public class TupleTypeValue extends TypeValue {
       return false;
     }
     if (!(other instanceof TupleTypeValue)) {
-      return getSupertype().isSubtypeOf(other);
+      return hasAncestor(other);
     }
     TupleTypeValue oTuple = (TupleTypeValue) other;
-    if (!(getSize() != oTuple.getSize())) {
+    if (getSize() != oTuple.getSize()) {
       return false;
     }
     // type-check subexpressions
     for (int i = 0; i < getSize(); ++i) {
-      TypeValue myType = entry(i).getType();
-      TypeValue otherType = oTuple.entry(i).getType();
-      if (!myType.isSubtypeOf(otherType)) {
+      TypeValue myType = entry(i);
+      TypeValue otherType = oTuple.entry(i);
+      if (myType == null || !myType.isSubtypeOf(otherType)) {
         return false;
       }
     }
@@ -8,6 +8,9 @@ public class Variable {
   private final VariableIdentifier identifier;
   private final Expression typeExpression;
   private final Scope scope;
+  // position in the scope that defined this variable, or -1 if it was not
+  // made by Scope.defineVariable()
+  private int slot = -1;
 
   private boolean assigned = false;
   private Expression valueExpression;
@@ -26,13 +29,21 @@ public class Variable {
   }
 
   public TypeValue getType() {
-    return (TypeValue) typeExpression.getValue(scope);
+    return (TypeValue) scope.getExpressionValue(typeExpression);
   }
   
   public Scope getScope() {
     return scope;
   }
 
+  int getSlot() {
+    return slot;
+  }
+
+  void setSlot(int slot) {
+    this.slot = slot;
+  }
+
   public boolean isAssigned() {
     return assigned;
   }
@@ -41,7 +52,7 @@ public class Variable {
     if (!isAssigned()) {
       return null;
     } else {
-      return valueExpression.getValue(scope);
+      return scope.getExpressionValue(valueExpression);
     }
   }
 
@@ -53,25 +64,31 @@ public class Variable {
     
     this.valueExpression = valExpr;
     this.assigned = true;
+    scope.changed();
   }
   
   public void verify() throws TypeMismatchException {
     // Ensure the Type is an actual type
-    if (typeExpression.getType(scope) != TypeTypeValue.getInstance()) {
+    TypeValue typeType = scope.getExpressionType(typeExpression);
+    if (typeType != TypeTypeValue.getInstance()) {
       // TODO(lucas) We should have a special exception for the case where
       // a nontype value is used as a type.
       throw new TypeMismatchException(
           TypeTypeValue.getInstance(),
-          typeExpression.getType(scope)
+          typeType
       );
     }
     
     // Ensure the value is of the correct type
     // TODO(lucas)
-    if (assigned && !(valueExpression.getType(scope).isSubtypeOf(getType()))) {
+    if (!assigned) {
+      return;
+    }
+    TypeValue valueType = scope.getExpressionType(valueExpression);
+    if (!valueType.isSubtypeOf(getType())) {
       throw new TypeMismatchException(
           getType(),
-          valueExpression.getType(scope)
+          valueType
       );
     }
   }
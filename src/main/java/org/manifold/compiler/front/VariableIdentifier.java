@@ -1,24 +1,39 @@
 package org.manifold.compiler.front;
 
+import java.util.Collections;
 import java.util.List;
 
+import org.manifold.compiler.SymbolTable;
+
 public class VariableIdentifier {
 
-  private String name;
-  private NamespaceIdentifier namespaceIdentifier;
+  private static final NamespaceIdentifier noNamespace =
+      new NamespaceIdentifier(Collections.<String>emptyList());
+
+  // the name is interned, so equal names are usually the same String
+  private final String name;
+  private final NamespaceIdentifier namespaceIdentifier;
+  // identifiers are hashed on every scope lookup, so the hash is computed
+  // once
+  private final int hash;
+  // this name without a namespace; made on first use
+  private VariableIdentifier unqualified = null;
 
   public VariableIdentifier(List<String> identifiers) {
     assert(identifiers.size() > 0);
-    this.name = identifiers.get(identifiers.size() - 1);
+    this.name = SymbolTable.getInstance().canonical(
+        identifiers.get(identifiers.size() - 1));
     this.namespaceIdentifier = new NamespaceIdentifier(
         identifiers.subList(0, identifiers.size() - 1)
     );
+    this.hash = computeHash();
   }
   
   public VariableIdentifier(NamespaceIdentifier namespaceIdentifier,
       String name) {
-    this.name = name;
+    this.name = SymbolTable.getInstance().canonical(name);
     this.namespaceIdentifier = namespaceIdentifier;
+    this.hash = computeHash();
   }
 
   public String getName() {
@@ -29,6 +44,22 @@ public class VariableIdentifier {
     return namespaceIdentifier;
   }
 
+  // Returns the identifier of the same name in no namespace. It is kept,
+  // so looking this identifier up unqualified again and again allocates
+  // nothing. The fields of the result are final, so a racing thread making
+  // a second one is harmless.
+  public VariableIdentifier getUnqualified() {
+    if (namespaceIdentifier.isEmpty()) {
+      return this;
+    }
+    VariableIdentifier result = unqualified;
+    if (result == null) {
+      result = new VariableIdentifier(noNamespace, name);
+      unqualified = result;
+    }
+    return result;
+  }
+
   @Override
   public String toString() {
     if (getNamespaceIdentifier().isEmpty()) {
@@ -39,12 +70,16 @@ public class VariableIdentifier {
     }
   }
 
-  @Override
-  public int hashCode() {
+  private int computeHash() {
     return 3 + 19 * getName().hashCode() + 37
         * getNamespaceIdentifier().hashCode();
   }
 
+  @Override
+  public int hashCode() {
+    return hash;
+  }
+
   @Override
   public boolean equals(Object aThat) {
     if (this == aThat) {
@@ -54,6 +89,9 @@ public class VariableIdentifier {
       return false;
     }
     VariableIdentifier that = (VariableIdentifier) aThat;
+    if (this.hash != that.hash) {
+      return false;
+    }
     // two variable identifiers are equal if they have the same namespace
     // and name
     return (this.getName().equals(that.getName()) && this
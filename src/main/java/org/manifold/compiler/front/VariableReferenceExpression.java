@@ -6,6 +6,14 @@ import org.manifold.compiler.Value;
 
 public class VariableReferenceExpression extends Expression {
   private final VariableIdentifier variable;
+
+  // The lexical address of the variable as seen from `boundScope`: slot
+  // `slot` of the scope `depth` levels up. Valid while the tree of scopes
+  // has had no new definitions since `boundDefinitions`.
+  private Scope boundScope = null;
+  private int boundDefinitions;
+  private int depth;
+  private int slot;
   
   public VariableIdentifier getIdentifier() {
     return variable;
@@ -15,6 +23,23 @@ public class VariableReferenceExpression extends Expression {
     this.variable = variable;
   }
 
+  // Resolves the identifier in `scope` and remembers where it was found,
+  // so that later lookups from the same scope are plain indexing.
+  void bind(Scope scope) throws VariableNotDefinedException {
+    depth = scope.getDepth(variable);
+    slot = scope.getVariable(variable).getSlot();
+    boundScope = scope;
+    boundDefinitions = scope.getDefinitionCount();
+  }
+
+  private Variable lookup(Scope scope) throws VariableNotDefinedException {
+    if (scope != boundScope
+        || scope.getDefinitionCount() != boundDefinitions) {
+      bind(scope);
+    }
+    return scope.getVariable(depth, slot);
+  }
+
   @Override
   public TypeValue getType(Scope scope) {
     return null;
@@ -25,10 +50,7 @@ public class VariableReferenceExpression extends Expression {
   public Value getValue(Scope scope) {
     // TODO better error handling
     try {
-      return scope.getVariableValue(variable);
-    } catch (VariableNotAssignedException e) {
-      throw new UndefinedBehaviourError(
-          "reference to unassigned variable '" + variable.toString() + "'");
+      return lookup(scope).getValue();
     } catch (VariableNotDefinedException e) {
       throw new UndefinedBehaviourError(
           "reference to undefined variable '" + variable.toString() + "'");
@@ -51,7 +73,7 @@ public class VariableReferenceExpression extends Expression {
   @Override
   public boolean isElaborationtimeKnowable(Scope scope) {
     try {
-      return scope.getVariable(variable).getValue().isElaborationtimeKnowable();
+      return lookup(scope).getValue().isElaborationtimeKnowable();
     } catch (VariableNotDefinedException ex) {
       assert(false);
       return false;
@@ -61,7 +83,7 @@ public class VariableReferenceExpression extends Expression {
   @Override
   public boolean isRuntimeKnowable(Scope scope) {
     try {
-      return scope.getVariable(variable).getValue().isRuntimeKnowable();
+      return lookup(scope).getValue().isRuntimeKnowable();
     } catch (VariableNotDefinedException ex) {
       assert(false);
       return false;
@@ -0,0 +1,63 @@
+package org.manifold.compiler.front;
+
+import org.manifold.compiler.Value;
+
+/**
+ * Binds every variable reference in a set of expressions to the lexical
+ * address (scope depth and slot) of its variable, as seen from one scope,
+ * so that evaluating the references later in that scope does not look
+ * their names up again. Run it once all of the scope's variables are
+ * defined; a later definition makes the bindings stale, and they are then
+ * redone on first use.
+ *
+ * References to names that are not defined are left alone, and reported
+ * when they are evaluated.
+ */
+public class VariableResolver implements ExpressionVisitor {
+
+  private final Scope scope;
+
+  public VariableResolver(Scope scope) {
+    this.scope = scope;
+  }
+
+  public void resolve(Iterable<Expression> expressions) {
+    for (Expression expression : expressions) {
+      expression.accept(this);
+    }
+  }
+
+  @Override
+  public void visit(FunctionInvocationExpression functionInvocationExpression) {
+    functionInvocationExpression.getFunctionExpression().accept(this);
+    functionInvocationExpression.getInputExpression().accept(this);
+  }
+
+  @Override
+  public void visit(LiteralExpression literalExpression) {
+    // tuple entries are evaluated in the scope of the tuple
+    Value value = literalExpression.getValue(scope);
+    if (value instanceof TupleValue) {
+      TupleValue tuple = (TupleValue) value;
+      for (int i = 0; i < tuple.getSize(); ++i) {
+        tuple.entry(i).accept(this);
+      }
+    }
+  }
+
+  @Override
+  public void visit(VariableAssignmentExpression variableAssignmentExpression) {
+    variableAssignmentExpression.getLvalueExpression().accept(this);
+    variableAssignmentExpression.getRvalueExpression().accept(this);
+  }
+
+  @Override
+  public void visit(VariableReferenceExpression variableReferenceExpression) {
+    try {
+      variableReferenceExpression.bind(scope);
+    } catch (VariableNotDefinedException e) {
+      // left for evaluation to report
+    }
+  }
+
+}
@@ -0,0 +1,300 @@
+package org.manifold.compiler.middle;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.manifold.compiler.ConnectionType;
+import org.manifold.compiler.ConnectionValue;
+import org.manifold.compiler.ConstraintType;
+import org.manifold.compiler.ConstraintValue;
+import org.manifold.compiler.NodeTypeValue;
+import org.manifold.compiler.NodeValue;
+import org.manifold.compiler.PortTypeValue;
+import org.manifold.compiler.TypeValue;
+import org.manifold.compiler.UndeclaredIdentifierException;
+
+/**
+ * An immutable snapshot of a Schematic, made by Schematic.freeze().
+ * Nodes and connections are numbered densely (0, 1, 2, ...) in order of
+ * their names. Names are kept in sorted arrays and looked up by binary
+ * search, and the name of a node is found from the node through an
+ * identity-keyed table of node IDs, so a frozen schematic needs a few
+ * flat arrays instead of one map entry per node and connection.
+ */
+public class FrozenSchematic extends Schematic {
+
+  private final String[] nodeNames;
+  private final NodeValue[] nodeValues;
+  private final String[] connectionNames;
+  private final ConnectionValue[] connectionValues;
+
+  // open-addressing table keyed on node identity; slots hold (node ID + 1)
+  // and zero marks an empty slot
+  private final int[] nodeTable;
+
+  private final Map<String, NodeValue> nodesView;
+  private final Map<String, ConnectionValue> connectionsView;
+
+  FrozenSchematic(Schematic source) {
+    super(source.getName());
+    source.copyDefinitionsTo(this);
+
+    Map<String, NodeValue> nodes = source.getNodes();
+    nodeNames = nodes.keySet().toArray(new String[nodes.size()]);
+    Arrays.sort(nodeNames);
+    nodeValues = new NodeValue[nodeNames.length];
+    for (int i = 0; i < nodeNames.length; ++i) {
+      nodeValues[i] = nodes.get(nodeNames[i]);
+    }
+
+    Map<String, ConnectionValue> connections = source.getConnections();
+    connectionNames =
+        connections.keySet().toArray(new String[connections.size()]);
+    Arrays.sort(connectionNames);
+    connectionValues = new ConnectionValue[connectionNames.length];
+    for (int i = 0; i < connectionNames.length; ++i) {
+      connectionValues[i] = connections.get(connectionNames[i]);
+    }
+
+    // keep the table at most half full
+    int capacity = 16;
+    while (capacity < nodeValues.length * 2) {
+      capacity <<= 1;
+    }
+    nodeTable = new int[capacity];
+    int mask = capacity - 1;
+    for (int id = 0; id < nodeValues.length; ++id) {
+      int slot = hash(nodeValues[id]) & mask;
+      while (nodeTable[slot] != 0) {
+        slot = (slot + 1) & mask;
+      }
+      nodeTable[slot] = id + 1;
+    }
+
+    nodesView = new NameMap<>(nodeNames, nodeValues);
+    connectionsView = new NameMap<>(connectionNames, connectionValues);
+  }
+
+  @Override
+  public FrozenSchematic freeze() {
+    return this;
+  }
+
+  public int getNumberOfNodes() {
+    return nodeNames.length;
+  }
+
+  // Returns the ID of the node with the given name, or -1 if there is none.
+  public int getNodeID(String instanceName) {
+    int id = Arrays.binarySearch(nodeNames, instanceName);
+    return id < 0 ? -1 : id;
+  }
+
+  // Returns the ID of a node, or -1 if it is not in this schematic.
+  public int getNodeID(NodeValue node) {
+    int mask = nodeTable.length - 1;
+    int slot = hash(node) & mask;
+    while (nodeTable[slot] != 0) {
+      int id = nodeTable[slot] - 1;
+      if (nodeValues[id] == node) {
+        return id;
+      }
+      slot = (slot + 1) & mask;
+    }
+    return -1;
+  }
+
+  public NodeValue getNode(int nodeID) {
+    return nodeValues[nodeID];
+  }
+
+  public String getNodeName(int nodeID) {
+    return nodeNames[nodeID];
+  }
+
+  public int getNumberOfConnections() {
+    return connectionNames.length;
+  }
+
+  // Returns the ID of the connection with the given name,
+  // or -1 if there is none.
+  public int getConnectionID(String instanceName) {
+    int id = Arrays.binarySearch(connectionNames, instanceName);
+    return id < 0 ? -1 : id;
+  }
+
+  public ConnectionValue getConnection(int connectionID) {
+    return connectionValues[connectionID];
+  }
+
+  public String getConnectionName(int connectionID) {
+    return connectionNames[connectionID];
+  }
+
+  @Override
+  public NodeValue getNode(String instanceName)
+      throws UndeclaredIdentifierException {
+    int id = getNodeID(instanceName);
+    if (id == -1) {
+      throw new UndeclaredIdentifierException(instanceName);
+    }
+    return nodeValues[id];
+  }
+
+  @Override
+  public String getNodeName(NodeValue instance) {
+    int id = getNodeID(instance);
+    if (id == -1) {
+      throw new NoSuchElementException();
+    }
+    return nodeNames[id];
+  }
+
+  @Override
+  public ConnectionValue getConnection(String instanceName)
+      throws UndeclaredIdentifierException {
+    int id = getConnectionID(instanceName);
+    if (id == -1) {
+      throw new UndeclaredIdentifierException(instanceName);
+    }
+    return connectionValues[id];
+  }
+
+  // Returns a read-only view of the nodes, in order of node ID.
+  @Override
+  public Map<String, NodeValue> getNodes() {
+    return nodesView;
+  }
+
+  // Returns a read-only view of the connections, in order of connection ID.
+  @Override
+  public Map<String, ConnectionValue> getConnections() {
+    return connectionsView;
+  }
+
+  @Override
+  public void addUserDefinedType(String typename, TypeValue td) {
+    throw new UnsupportedOperationException("schematic is frozen");
+  }
+
+  @Override
+  public void addPortType(String typename, PortTypeValue portType) {
+    throw new UnsupportedOperationException("schematic is frozen");
+  }
+
+  @Override
+  public void addNodeType(String typename, NodeTypeValue nd) {
+    throw new UnsupportedOperationException("schematic is frozen");
+  }
+
+  @Override
+  public void addConnectionType(String typename, ConnectionType cd) {
+    throw new UnsupportedOperationException("schematic is frozen");
+  }
+
+  @Override
+  public void addConstraintType(String typename, ConstraintType cd) {
+    throw new UnsupportedOperationException("schematic is frozen");
+  }
+
+  @Override
+  public void addNode(String instanceName, NodeValue node) {
+    throw new UnsupportedOperationException("schematic is frozen");
+  }
+
+  @Override
+  public void addConnection(String instanceName, ConnectionValue conn) {
+    throw new UnsupportedOperationException("schematic is frozen");
+  }
+
+  @Override
+  public void addConstraint(String instanceName,
+      ConstraintValue constraint) {
+    throw new UnsupportedOperationException("schematic is frozen");
+  }
+
+  private static int hash(NodeValue node) {
+    // spread the identity hash so that linear probing stays short
+    int h = System.identityHashCode(node);
+    return h ^ (h >>> 16);
+  }
+
+  // Read-only map over a sorted name array and a parallel value array.
+  private static class NameMap<V> extends AbstractMap<String, V> {
+    private final String[] names;
+    private final V[] values;
+
+    public NameMap(String[] names, V[] values) {
+      this.names = names;
+      this.values = values;
+    }
+
+    private int indexOf(Object key) {
+      if (!(key instanceof String)) {
+        return -1;
+      }
+      int i = Arrays.binarySearch(names, (String) key);
+      return i < 0 ? -1 : i;
+    }
+
+    @Override
+    public int size() {
+      return names.length;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+      return indexOf(key) != -1;
+    }
+
+    @Override
+    public V get(Object key) {
+      int i = indexOf(key);
+      return i == -1 ? null : values[i];
+    }
+
+    @Override
+    public Set<Map.Entry<String, V>> entrySet() {
+      return new AbstractSet<Map.Entry<String, V>>() {
+        @Override
+        public int size() {
+          return names.length;
+        }
+
+        @Override
+        public Iterator<Map.Entry<String, V>> iterator() {
+          return new Iterator<Map.Entry<String, V>>() {
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() {
+              return next < names.length;
+            }
+
+            @Override
+            public Map.Entry<String, V> next() {
+              if (!hasNext()) {
+                throw new NoSuchElementException();
+              }
+              Map.Entry<String, V> entry =
+                  new SimpleImmutableEntry<>(names[next], values[next]);
+              next += 1;
+              return entry;
+            }
+
+            @Override
+            public void remove() {
+              throw new UnsupportedOperationException("schematic is frozen");
+            }
+          };
+        }
+      };
+    }
+  }
+
+}
@@ -1,5 +1,6 @@
 package org.manifold.compiler.middle;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.NoSuchElementException;
@@ -18,9 +19,6 @@ import org.manifold.compiler.PortTypeValue;
 import org.manifold.compiler.StringTypeValue;
 import org.manifold.compiler.TypeValue;
 import org.manifold.compiler.UndeclaredIdentifierException;
-import org.manifold.compiler.UndefinedBehaviourError;
-
-import com.google.common.collect.ImmutableMap;
 
 /**
  * A Schematic contains all the information needed by the intermediate
@@ -49,6 +47,16 @@ public class Schematic {
   private final Map<String, ConnectionValue> connections;
   private final Map<String, ConstraintValue> constraints;
 
+  // Read-only live views of the maps above, created once
+  // so that the accessors below don't copy anything.
+  private final Map<String, TypeValue> userDefinedTypesView;
+  private final Map<String, PortTypeValue> portTypesView;
+  private final Map<String, NodeTypeValue> nodeTypesView;
+  private final Map<String, ConnectionType> connectionTypesView;
+  private final Map<String, ConstraintType> constraintTypesView;
+  private final Map<String, NodeValue> nodesView;
+  private final Map<String, ConnectionValue> connectionsView;
+
   public Schematic(String name) {
     this.name = name;
 
@@ -64,6 +72,14 @@ public class Schematic {
     this.reverseNodeMap = new HashMap<>();
     this.connections = new HashMap<>();
     this.constraints = new HashMap<>();
+
+    this.userDefinedTypesView = Collections.unmodifiableMap(userDefinedTypes);
+    this.portTypesView = Collections.unmodifiableMap(portTypes);
+    this.nodeTypesView = Collections.unmodifiableMap(nodeTypes);
+    this.connectionTypesView = Collections.unmodifiableMap(connectionTypes);
+    this.constraintTypesView = Collections.unmodifiableMap(constraintTypes);
+    this.nodesView = Collections.unmodifiableMap(nodes);
+    this.connectionsView = Collections.unmodifiableMap(connections);
   }
 
   /*
@@ -76,17 +92,32 @@ public class Schematic {
     TypeValue intType = IntegerTypeValue.getInstance();
     TypeValue stringType = StringTypeValue.getInstance();
 
-    try {
-      addUserDefinedType("Bool", boolType);
-      addUserDefinedType("Int", intType);
-      addUserDefinedType("String", stringType);
-    } catch (MultipleDefinitionException mde) {
-      // this should not actually be possible unless there is something wrong
-      // with the compiler itself
-      throw new UndefinedBehaviourError(
-          "could not create default type definitions (" + mde.getMessage()
-              + ")");
-    }
+    // the map is still empty here, so none of these can clash; going
+    // through the map directly keeps the constructor from calling
+    // methods that a subclass (FrozenSchematic) may override
+    userDefinedTypes.put("Bool", boolType);
+    userDefinedTypes.put("Int", intType);
+    userDefinedTypes.put("String", stringType);
+  }
+
+  /**
+   * Returns an immutable, compact copy of this schematic, for use once
+   * the schematic is complete (e.g. after deserialization or elaboration).
+   * Nodes and connections get dense integer IDs in order of their names;
+   * see FrozenSchematic. The copy shares all values with this schematic.
+   */
+  public FrozenSchematic freeze() {
+    return new FrozenSchematic(this);
+  }
+
+  // Copies every type definition and constraint into `target`.
+  void copyDefinitionsTo(Schematic target) {
+    target.userDefinedTypes.putAll(userDefinedTypes);
+    target.portTypes.putAll(portTypes);
+    target.nodeTypes.putAll(nodeTypes);
+    target.connectionTypes.putAll(connectionTypes);
+    target.constraintTypes.putAll(constraintTypes);
+    target.constraints.putAll(constraints);
   }
 
   public void addUserDefinedType(String typename, TypeValue td)
@@ -106,6 +137,12 @@ public class Schematic {
     }
   }
 
+  // Returns a read-only view of the user-defined types in this schematic,
+  // including the built-in Bool, Int and String types.
+  public Map<String, TypeValue> getUserDefinedTypes() {
+    return userDefinedTypesView;
+  }
+
   public void addPortType(String typename, PortTypeValue portType)
       throws MultipleDefinitionException {
     if (portTypes.containsKey(typename)) {
@@ -123,6 +160,11 @@ public class Schematic {
     }
   }
 
+  // Returns a read-only view of the port types in this schematic.
+  public Map<String, PortTypeValue> getPortTypes() {
+    return portTypesView;
+  }
+
   public void addNodeType(String typename, NodeTypeValue nd)
       throws MultipleDefinitionException {
     if (nodeTypes.containsKey(typename)) {
@@ -141,6 +183,11 @@ public class Schematic {
     }
   }
 
+  // Returns a read-only view of the node types in this schematic.
+  public Map<String, NodeTypeValue> getNodeTypes() {
+    return nodeTypesView;
+  }
+
   public void addConnectionType(String typename, ConnectionType cd)
       throws MultipleDefinitionException {
     if (connectionTypes.containsKey(typename)) {
@@ -158,6 +205,11 @@ public class Schematic {
     }
   }
 
+  // Returns a read-only view of the connection types in this schematic.
+  public Map<String, ConnectionType> getConnectionTypes() {
+    return connectionTypesView;
+  }
+
   public void addConstraintType(String typename, ConstraintType cd)
       throws MultipleDefinitionException {
     if (constraintTypes.containsKey(typename)) {
@@ -175,6 +227,11 @@ public class Schematic {
     }
   }
 
+  // Returns a read-only view of the constraint types in this schematic.
+  public Map<String, ConstraintType> getConstraintTypes() {
+    return constraintTypesView;
+  }
+
   public void addNode(String instanceName, NodeValue node)
       throws MultipleAssignmentException {
     if (nodes.containsKey(instanceName) || reverseNodeMap.containsKey(node)) {
@@ -217,12 +274,16 @@ public class Schematic {
     }
   }
 
+  // Returns a read-only view of the nodes in this schematic.
+  // The view reflects nodes that are added later.
   public Map<String, NodeValue> getNodes() {
-    return ImmutableMap.copyOf(nodes);
+    return nodesView;
   }
   
+  // Returns a read-only view of the connections in this schematic.
+  // The view reflects connections that are added later.
   public Map<String, ConnectionValue> getConnections() {
-    return ImmutableMap.copyOf(connections);
+    return connectionsView;
   }
 
   public void addConstraint(String instanceName, ConstraintValue constraint)
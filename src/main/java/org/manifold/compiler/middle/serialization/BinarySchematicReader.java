@@ -0,0 +1,470 @@
+package org.manifold.compiler.middle.serialization;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.manifold.compiler.AttributeSchema;
+import org.manifold.compiler.Attributes;
+import org.manifold.compiler.BooleanValue;
+import org.manifold.compiler.ConnectionType;
+import org.manifold.compiler.ConnectionValue;
+import org.manifold.compiler.ConstraintType;
+import org.manifold.compiler.IntegerValue;
+import org.manifold.compiler.NodeTypeValue;
+import org.manifold.compiler.NodeValue;
+import org.manifold.compiler.PortTypeValue;
+import org.manifold.compiler.PortValue;
+import org.manifold.compiler.StringTypeValue;
+import org.manifold.compiler.StringValue;
+import org.manifold.compiler.TypeValue;
+import org.manifold.compiler.Value;
+import org.manifold.compiler.middle.Schematic;
+import org.manifold.compiler.middle.SchematicException;
+
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Decodes the sections of a file written by SchematicBinarySerializer
+ * (see there for the layout). Each section is memory-mapped, and records
+ * are decoded straight from the mapped bytes; strings are only decoded the
+ * first time something refers to them.
+ *
+ * The section buffers are never read directly: every read goes through a
+ * duplicate positioned at the record, so records can be decoded in any
+ * order once the types are read. Records read one at a time (readNodeAt(),
+ * readConnectionAt()) also leave their attribute values encoded until one
+ * of them is read.
+ */
+class BinarySchematicReader implements SerializationConsts {
+
+  // Looks up a node by its index in the NODES section.
+  interface NodeIndex {
+    NodeValue getNode(int nodeIndex) throws IOException, SchematicException;
+  }
+
+  private final ByteBuffer typesSection;
+  private final ByteBuffer nodesSection;
+  private final ByteBuffer connectionsSection;
+
+  private final ByteBuffer strings;
+  // string i starts at stringOffsets[i] and is stringLengths[i] bytes
+  private final int[] stringOffsets;
+  private final int[] stringLengths;
+  private final String[] decodedStrings;
+  private final StringValue[] stringValues;
+
+  private PortTypeValue[] portTypes;
+  private NodeTypeValue[] nodeTypes;
+  private ConnectionType[] connectionTypes;
+
+  // Maps the sections of the file; the channel can be closed afterwards.
+  public BinarySchematicReader(FileChannel channel) throws IOException {
+    ByteBuffer header = map(channel, 0, BinaryConsts.HEADER_SIZE);
+    if (header.getInt() != BinaryConsts.MAGIC) {
+      throw new IOException("not a binary schematic file");
+    }
+    int version = header.getInt();
+    if (version != BinaryConsts.VERSION) {
+      throw new IOException(
+          "unsupported binary schematic version " + version);
+    }
+    int nSections = header.getInt();
+    ByteBuffer directory = map(channel, BinaryConsts.HEADER_SIZE,
+        (long) nSections * BinaryConsts.DIRECTORY_ENTRY_SIZE);
+    ByteBuffer stringsSection = null;
+    ByteBuffer types = null;
+    ByteBuffer nodes = null;
+    ByteBuffer connections = null;
+    for (int i = 0; i < nSections; ++i) {
+      int id = directory.getInt();
+      ByteBuffer section =
+          map(channel, directory.getLong(), directory.getLong());
+      switch (id) {
+          case BinaryConsts.SECTION_STRINGS:
+            stringsSection = section;
+            break;
+          case BinaryConsts.SECTION_TYPES:
+            types = section;
+            break;
+          case BinaryConsts.SECTION_NODES:
+            nodes = section;
+            break;
+          case BinaryConsts.SECTION_CONNECTIONS:
+            connections = section;
+            break;
+          default:
+            // sections added by later versions can be skipped
+            break;
+      }
+    }
+    if (stringsSection == null || types == null || nodes == null
+        || connections == null) {
+      throw new IOException("binary schematic file is missing a section");
+    }
+    typesSection = types;
+    nodesSection = nodes;
+    connectionsSection = connections;
+
+    // only record where each string is; see getString()
+    strings = stringsSection;
+    ByteBuffer in = stringsSection.duplicate();
+    int n = readCount(in);
+    stringOffsets = new int[n];
+    stringLengths = new int[n];
+    decodedStrings = new String[n];
+    stringValues = new StringValue[n];
+    for (int i = 0; i < n; ++i) {
+      int length = readCount(in);
+      if (length > in.remaining()) {
+        throw new IOException("binary schematic section is truncated");
+      }
+      stringOffsets[i] = in.position();
+      stringLengths[i] = length;
+      in.position(in.position() + length);
+    }
+  }
+
+  private static MappedByteBuffer map(FileChannel channel, long offset,
+      long length) throws IOException {
+    if (offset < 0 || length < 0 || offset + length > channel.size()) {
+      throw new IOException("binary schematic file is truncated");
+    }
+    if (length > Integer.MAX_VALUE) {
+      throw new IOException("binary schematic section is too large");
+    }
+    return channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+  }
+
+  // Safe to call from several threads: at worst a string is decoded twice
+  // (and getStringValue() makes two values for it).
+  String getString(int index) throws IOException {
+    if (index < 0 || index >= decodedStrings.length) {
+      throw new IOException("invalid string index " + index);
+    }
+    String s = decodedStrings[index];
+    if (s == null) {
+      byte[] bytes = new byte[stringLengths[index]];
+      ByteBuffer view = strings.duplicate();
+      view.position(stringOffsets[index]);
+      view.get(bytes);
+      s = new String(bytes, StandardCharsets.UTF_8);
+      decodedStrings[index] = s;
+    }
+    return s;
+  }
+
+  // As getString(), but the attribute value holding the string; like the
+  // string, it is only made once per string in the file.
+  private StringValue getStringValue(int index) throws IOException {
+    String s = getString(index);
+    StringValue value = stringValues[index];
+    if (value == null) {
+      value = new StringValue(StringTypeValue.getInstance(), s);
+      stringValues[index] = value;
+    }
+    return value;
+  }
+
+  private String readString(ByteBuffer in) throws IOException {
+    return getString(readCount(in));
+  }
+
+  String readSchematicName() throws IOException {
+    return readString(typesSection.duplicate());
+  }
+
+  // Reads every type definition into `sch`, which is also used to look up
+  // attribute types by name.
+  void readTypes(Schematic sch) throws IOException, SchematicException {
+    ByteBuffer in = typesSection.duplicate();
+    readCount(in); // schematic name
+
+    portTypes = new PortTypeValue[readCount(in)];
+    for (int i = 0; i < portTypes.length; ++i) {
+      String typeName = readString(in);
+      portTypes[i] = new PortTypeValue(readAttributeTypes(sch, in));
+      sch.addPortType(typeName, portTypes[i]);
+    }
+
+    nodeTypes = new NodeTypeValue[readCount(in)];
+    for (int i = 0; i < nodeTypes.length; ++i) {
+      String typeName = readString(in);
+      Map<String, TypeValue> attributes = readAttributeTypes(sch, in);
+      int nPorts = readCount(in);
+      Map<String, PortTypeValue> ports = new HashMap<>();
+      for (int p = 0; p < nPorts; ++p) {
+        String portName = readString(in);
+        ports.put(portName, portTypes[readIndex(in, portTypes.length)]);
+      }
+      nodeTypes[i] = new NodeTypeValue(attributes, ports);
+      sch.addNodeType(typeName, nodeTypes[i]);
+    }
+
+    connectionTypes = new ConnectionType[readCount(in)];
+    for (int i = 0; i < connectionTypes.length; ++i) {
+      String typeName = readString(in);
+      connectionTypes[i] = new ConnectionType(readAttributeTypes(sch, in));
+      sch.addConnectionType(typeName, connectionTypes[i]);
+    }
+
+    int nConstraintTypes = readCount(in);
+    for (int i = 0; i < nConstraintTypes; ++i) {
+      String typeName = readString(in);
+      sch.addConstraintType(typeName,
+          new ConstraintType(readAttributeTypes(sch, in)));
+    }
+  }
+
+  private Map<String, TypeValue> readAttributeTypes(Schematic sch,
+      ByteBuffer in) throws IOException, SchematicException {
+    int n = readCount(in);
+    Map<String, TypeValue> attributes = new HashMap<>();
+    for (int i = 0; i < n; ++i) {
+      String name = readString(in);
+      attributes.put(name, sch.getUserDefinedType(readString(in)));
+    }
+    return attributes;
+  }
+
+  // Record offsets, for reading records out of order. The name of record i
+  // is the string with index nameIndices[i]; the record itself (starting
+  // with that name) is at offsets[i] in its section.
+  static class RecordIndex {
+    final int[] offsets;
+    final int[] nameIndices;
+
+    RecordIndex(int n) {
+      offsets = new int[n];
+      nameIndices = new int[n];
+    }
+
+    int size() {
+      return offsets.length;
+    }
+  }
+
+  // Finds every node record without decoding any of them.
+  RecordIndex indexNodes() throws IOException {
+    ByteBuffer in = nodesSection.duplicate();
+    RecordIndex index = new RecordIndex(readCount(in));
+    for (int i = 0; i < index.size(); ++i) {
+      index.offsets[i] = in.position();
+      index.nameIndices[i] = readCount(in);
+      readCount(in); // node type
+      skipAttributes(in);
+      int nPorts = readCount(in);
+      for (int p = 0; p < nPorts; ++p) {
+        readCount(in); // port name
+        skipAttributes(in);
+      }
+    }
+    return index;
+  }
+
+  // Finds every connection record without decoding any of them.
+  RecordIndex indexConnections() throws IOException {
+    ByteBuffer in = connectionsSection.duplicate();
+    RecordIndex index = new RecordIndex(readCount(in));
+    for (int i = 0; i < index.size(); ++i) {
+      index.offsets[i] = in.position();
+      index.nameIndices[i] = readCount(in);
+      // connection type, from node and port, to node and port
+      for (int field = 0; field < 5; ++field) {
+        readCount(in);
+      }
+      skipAttributes(in);
+    }
+    return index;
+  }
+
+  // Reads every node into `sch` in file order and returns them by index.
+  NodeValue[] readNodes(Schematic sch)
+      throws IOException, SchematicException {
+    ByteBuffer in = nodesSection.duplicate();
+    NodeValue[] nodes = new NodeValue[readCount(in)];
+    for (int i = 0; i < nodes.length; ++i) {
+      String name = readString(in);
+      nodes[i] = readNode(in, false);
+      sch.addNode(name, nodes[i]);
+    }
+    return nodes;
+  }
+
+  // Reads the node record at `offset` in the NODES section.
+  NodeValue readNodeAt(int offset) throws IOException, SchematicException {
+    ByteBuffer in = nodesSection.duplicate();
+    in.position(offset);
+    readCount(in); // name
+    return readNode(in, true);
+  }
+
+  private NodeValue readNode(ByteBuffer in, boolean deferred)
+      throws IOException, SchematicException {
+    NodeTypeValue nodeType = nodeTypes[readIndex(in, nodeTypes.length)];
+    Attributes attributes = readAttributes(nodesSection, in,
+        nodeType.getAttributeSchema(), deferred);
+    int nPorts = readCount(in);
+    Map<String, Attributes> portAttrs = new HashMap<>();
+    for (int p = 0; p < nPorts; ++p) {
+      String portName = readString(in);
+      PortTypeValue portType = nodeType.getPorts().get(portName);
+      if (portType == null) {
+        throw new IOException("invalid port name " + portName);
+      }
+      portAttrs.put(portName, readAttributes(nodesSection, in,
+          portType.getAttributeSchema(), deferred));
+    }
+    return new NodeValue(nodeType, attributes, portAttrs);
+  }
+
+  // Reads every connection into `sch` in file order.
+  void readConnections(Schematic sch, final NodeValue[] nodes)
+      throws IOException, SchematicException {
+    NodeIndex nodeIndex = new NodeIndex() {
+      @Override
+      public NodeValue getNode(int nodeIndex) throws IOException {
+        if (nodeIndex >= nodes.length) {
+          throw new IOException("invalid node index " + nodeIndex);
+        }
+        return nodes[nodeIndex];
+      }
+    };
+    ByteBuffer in = connectionsSection.duplicate();
+    int nConnections = readCount(in);
+    for (int i = 0; i < nConnections; ++i) {
+      String name = readString(in);
+      sch.addConnection(name, readConnection(in, nodeIndex, false));
+    }
+  }
+
+  // Reads the connection record at `offset` in the CONNECTIONS section.
+  ConnectionValue readConnectionAt(int offset, NodeIndex nodes)
+      throws IOException, SchematicException {
+    ByteBuffer in = connectionsSection.duplicate();
+    in.position(offset);
+    readCount(in); // name
+    return readConnection(in, nodes, true);
+  }
+
+  private ConnectionValue readConnection(ByteBuffer in, NodeIndex nodes,
+      boolean deferred) throws IOException, SchematicException {
+    ConnectionType connType =
+        connectionTypes[readIndex(in, connectionTypes.length)];
+    PortValue from = nodes.getNode(readCount(in)).getPort(readString(in));
+    PortValue to = nodes.getNode(readCount(in)).getPort(readString(in));
+    return new ConnectionValue(connType, from, to, readAttributes(
+        connectionsSection, in, connType.getAttributeSchema(), deferred));
+  }
+
+  // Reads the attributes at the position of `in`, a duplicate of
+  // `section`. If `deferred`, only their position is kept for now; they
+  // are decoded the first time one of them is read, and a damaged record
+  // is then reported as an UncheckedIOException.
+  private Attributes readAttributes(final ByteBuffer section, ByteBuffer in,
+      final AttributeSchema schema, boolean deferred)
+      throws IOException, SchematicException {
+    if (!deferred || schema.size() == 0) {
+      return Attributes.of(schema, readAttributes(in));
+    }
+    final int offset = in.position();
+    skipAttributes(in);
+    return Attributes.deferred(schema, new Attributes.Source() {
+      @Override
+      public Attributes read() {
+        ByteBuffer at = section.duplicate();
+        at.position(offset);
+        try {
+          return Attributes.of(schema, readAttributes(at));
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        } catch (SchematicException e) {
+          throw corrupt(e);
+        }
+      }
+    });
+  }
+
+  // The file was written from a valid schematic, so a record that fails
+  // to build can only come from a damaged file.
+  static UncheckedIOException corrupt(SchematicException e) {
+    return new UncheckedIOException(new IOException(
+        "corrupt binary schematic file (" + e.getMessage() + ")", e));
+  }
+
+  private Map<String, Value> readAttributes(ByteBuffer in)
+      throws IOException {
+    int n = readCount(in);
+    if (n == 0) {
+      return ImmutableMap.of();
+    }
+    Map<String, Value> attributes = new HashMap<>();
+    for (int i = 0; i < n; ++i) {
+      String name = readString(in);
+      attributes.put(name, readValue(in));
+    }
+    return attributes;
+  }
+
+  private void skipAttributes(ByteBuffer in) throws IOException {
+    int n = readCount(in);
+    for (int i = 0; i < n; ++i) {
+      readCount(in); // name
+      long tag = readVarint(in);
+      if (tag == BinaryConsts.VALUE_INTEGER
+          || tag == BinaryConsts.VALUE_STRING) {
+        readVarint(in);
+      }
+    }
+  }
+
+  private Value readValue(ByteBuffer in) throws IOException {
+    long tag = readVarint(in);
+    if (tag == BinaryConsts.VALUE_FALSE) {
+      return BooleanValue.getInstance(false);
+    } else if (tag == BinaryConsts.VALUE_TRUE) {
+      return BooleanValue.getInstance(true);
+    } else if (tag == BinaryConsts.VALUE_INTEGER) {
+      int zigzag = (int) readVarint(in);
+      return IntegerValue.getInstance((zigzag >>> 1) ^ -(zigzag & 1));
+    } else if (tag == BinaryConsts.VALUE_STRING) {
+      return getStringValue(readCount(in));
+    } else {
+      throw new IOException("invalid value tag " + tag);
+    }
+  }
+
+  private static int readIndex(ByteBuffer in, int limit) throws IOException {
+    long index = readVarint(in);
+    if (index >= limit) {
+      throw new IOException("invalid index " + index);
+    }
+    return (int) index;
+  }
+
+  private static int readCount(ByteBuffer in) throws IOException {
+    return readIndex(in, Integer.MAX_VALUE);
+  }
+
+  // Reads an unsigned LEB128 varint.
+  private static long readVarint(ByteBuffer in) throws IOException {
+    long value = 0;
+    for (int shift = 0; shift < 64; shift += 7) {
+      if (!in.hasRemaining()) {
+        throw new IOException("binary schematic section is truncated");
+      }
+      byte b = in.get();
+      value |= (long) (b & 0x7f) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new IOException("malformed varint");
+  }
+
+}
@@ -0,0 +1,368 @@
+package org.manifold.compiler.middle.serialization;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.manifold.compiler.ConnectionType;
+import org.manifold.compiler.ConnectionValue;
+import org.manifold.compiler.ConstraintType;
+import org.manifold.compiler.ConstraintValue;
+import org.manifold.compiler.NodeTypeValue;
+import org.manifold.compiler.NodeValue;
+import org.manifold.compiler.PortTypeValue;
+import org.manifold.compiler.TypeValue;
+import org.manifold.compiler.UndeclaredIdentifierException;
+import org.manifold.compiler.middle.Schematic;
+import org.manifold.compiler.middle.SchematicException;
+
+/**
+ * A read-only schematic backed by a binary schematic file, made by
+ * SchematicBinaryDeserializer.deserializeLazily(). Types are read when the
+ * schematic is opened; nodes and connections are only located, and each
+ * one is read from the file the first time it is needed. Names are decoded
+ * on demand too, and the name-to-record table is only built on the first
+ * lookup by name. The attribute values of a record stay encoded until one
+ * of them is read.
+ *
+ * Nodes and connections keep the order they have in the file. Reading a
+ * record and the tables above are synchronized on the schematic, so it can
+ * be shared between threads, and each node or connection is only ever
+ * read once.
+ */
+class LazySchematic extends Schematic {
+
+  private final BinarySchematicReader reader;
+
+  private final Records nodeRecords;
+  private final Records connectionRecords;
+
+  // read so far; a null entry has not been read yet
+  private final NodeValue[] nodes;
+  private final ConnectionValue[] connections;
+  private final Map<NodeValue, Integer> nodeIDs = new IdentityHashMap<>();
+
+  private final BinarySchematicReader.NodeIndex nodeIndex =
+      new BinarySchematicReader.NodeIndex() {
+        @Override
+        public NodeValue getNode(int nodeID) throws IOException {
+          if (nodeID >= nodes.length) {
+            throw new IOException("invalid node index " + nodeID);
+          }
+          return node(nodeID);
+        }
+      };
+
+  private final Map<String, NodeValue> nodesView;
+  private final Map<String, ConnectionValue> connectionsView;
+
+  LazySchematic(BinarySchematicReader reader)
+      throws IOException, SchematicException {
+    super(reader.readSchematicName());
+    this.reader = reader;
+
+    // add* are read-only here, so read the types into a scratch schematic
+    Schematic types = new Schematic(getName());
+    reader.readTypes(types);
+    for (Entry<String, PortTypeValue> entry
+        : types.getPortTypes().entrySet()) {
+      super.addPortType(entry.getKey(), entry.getValue());
+    }
+    for (Entry<String, NodeTypeValue> entry
+        : types.getNodeTypes().entrySet()) {
+      super.addNodeType(entry.getKey(), entry.getValue());
+    }
+    for (Entry<String, ConnectionType> entry
+        : types.getConnectionTypes().entrySet()) {
+      super.addConnectionType(entry.getKey(), entry.getValue());
+    }
+    for (Entry<String, ConstraintType> entry
+        : types.getConstraintTypes().entrySet()) {
+      super.addConstraintType(entry.getKey(), entry.getValue());
+    }
+
+    nodeRecords = new Records(reader.indexNodes());
+    connectionRecords = new Records(reader.indexConnections());
+    nodes = new NodeValue[nodeRecords.size()];
+    connections = new ConnectionValue[connectionRecords.size()];
+
+    nodesView = new RecordMap<NodeValue>(nodeRecords) {
+      @Override
+      protected NodeValue load(int id) {
+        return node(id);
+      }
+    };
+    connectionsView = new RecordMap<ConnectionValue>(connectionRecords) {
+      @Override
+      protected ConnectionValue load(int id) {
+        return connection(id);
+      }
+    };
+  }
+
+  private synchronized NodeValue node(int id) {
+    NodeValue node = nodes[id];
+    if (node == null) {
+      try {
+        node = reader.readNodeAt(nodeRecords.index.offsets[id]);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      } catch (SchematicException e) {
+        throw BinarySchematicReader.corrupt(e);
+      }
+      nodes[id] = node;
+      nodeIDs.put(node, id);
+    }
+    return node;
+  }
+
+  private synchronized ConnectionValue connection(int id) {
+    ConnectionValue conn = connections[id];
+    if (conn == null) {
+      try {
+        conn = reader.readConnectionAt(connectionRecords.index.offsets[id],
+            nodeIndex);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      } catch (SchematicException e) {
+        throw BinarySchematicReader.corrupt(e);
+      }
+      connections[id] = conn;
+    }
+    return conn;
+  }
+
+  @Override
+  public NodeValue getNode(String instanceName)
+      throws UndeclaredIdentifierException {
+    int id = nodeRecords.idOf(instanceName);
+    if (id == -1) {
+      throw new UndeclaredIdentifierException(instanceName);
+    }
+    return node(id);
+  }
+
+  @Override
+  public synchronized String getNodeName(NodeValue instance) {
+    // a node that has not been read cannot have been handed out
+    Integer id = nodeIDs.get(instance);
+    if (id == null) {
+      throw new NoSuchElementException();
+    }
+    return nodeRecords.nameOf(id);
+  }
+
+  @Override
+  public ConnectionValue getConnection(String instanceName)
+      throws UndeclaredIdentifierException {
+    int id = connectionRecords.idOf(instanceName);
+    if (id == -1) {
+      throw new UndeclaredIdentifierException(instanceName);
+    }
+    return connection(id);
+  }
+
+  // Returns a read-only view of the nodes, in file order.
+  @Override
+  public Map<String, NodeValue> getNodes() {
+    return nodesView;
+  }
+
+  // Returns a read-only view of the connections, in file order.
+  @Override
+  public Map<String, ConnectionValue> getConnections() {
+    return connectionsView;
+  }
+
+  @Override
+  public void addUserDefinedType(String typename, TypeValue td) {
+    throw new UnsupportedOperationException("schematic is read-only");
+  }
+
+  @Override
+  public void addPortType(String typename, PortTypeValue portType) {
+    throw new UnsupportedOperationException("schematic is read-only");
+  }
+
+  @Override
+  public void addNodeType(String typename, NodeTypeValue nd) {
+    throw new UnsupportedOperationException("schematic is read-only");
+  }
+
+  @Override
+  public void addConnectionType(String typename, ConnectionType cd) {
+    throw new UnsupportedOperationException("schematic is read-only");
+  }
+
+  @Override
+  public void addConstraintType(String typename, ConstraintType cd) {
+    throw new UnsupportedOperationException("schematic is read-only");
+  }
+
+  @Override
+  public void addNode(String instanceName, NodeValue node) {
+    throw new UnsupportedOperationException("schematic is read-only");
+  }
+
+  @Override
+  public void addConnection(String instanceName, ConnectionValue conn) {
+    throw new UnsupportedOperationException("schematic is read-only");
+  }
+
+  @Override
+  public void addConstraint(String instanceName,
+      ConstraintValue constraint) {
+    throw new UnsupportedOperationException("schematic is read-only");
+  }
+
+  // The names of one kind of record.
+  private class Records {
+    private final BinarySchematicReader.RecordIndex index;
+    // built on the first lookup by name
+    private Map<String, Integer> ids = null;
+
+    public Records(BinarySchematicReader.RecordIndex index) {
+      this.index = index;
+    }
+
+    public int size() {
+      return index.size();
+    }
+
+    public String nameOf(int id) {
+      try {
+        return reader.getString(index.nameIndices[id]);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    // Returns the record with the given name, or -1 if there is none.
+    public int idOf(Object name) {
+      synchronized (LazySchematic.this) {
+        if (ids == null) {
+          ids = new HashMap<>();
+          for (int id = 0; id < size(); ++id) {
+            ids.put(nameOf(id), id);
+          }
+        }
+        Integer id = ids.get(name);
+        return id == null ? -1 : id;
+      }
+    }
+  }
+
+  // Read-only map over one kind of record; values are read as they are
+  // reached, and iterating over the keys alone reads nothing.
+  private abstract static class RecordMap<V> extends AbstractMap<String, V> {
+    private final Records records;
+
+    public RecordMap(Records records) {
+      this.records = records;
+    }
+
+    protected abstract V load(int id);
+
+    @Override
+    public int size() {
+      return records.size();
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+      return records.idOf(key) != -1;
+    }
+
+    @Override
+    public V get(Object key) {
+      int id = records.idOf(key);
+      return id == -1 ? null : load(id);
+    }
+
+    @Override
+    public Set<String> keySet() {
+      return new AbstractSet<String>() {
+        @Override
+        public int size() {
+          return records.size();
+        }
+
+        @Override
+        public boolean contains(Object key) {
+          return containsKey(key);
+        }
+
+        @Override
+        public Iterator<String> iterator() {
+          return new RecordIterator<String>(records.size()) {
+            @Override
+            protected String get(int id) {
+              return records.nameOf(id);
+            }
+          };
+        }
+      };
+    }
+
+    @Override
+    public Set<Map.Entry<String, V>> entrySet() {
+      return new AbstractSet<Map.Entry<String, V>>() {
+        @Override
+        public int size() {
+          return records.size();
+        }
+
+        @Override
+        public Iterator<Map.Entry<String, V>> iterator() {
+          return new RecordIterator<Map.Entry<String, V>>(records.size()) {
+            @Override
+            protected Map.Entry<String, V> get(int id) {
+              return new SimpleImmutableEntry<>(records.nameOf(id),
+                  load(id));
+            }
+          };
+        }
+      };
+    }
+  }
+
+  private abstract static class RecordIterator<T> implements Iterator<T> {
+    private final int size;
+    private int next = 0;
+
+    public RecordIterator(int size) {
+      this.size = size;
+    }
+
+    protected abstract T get(int id);
+
+    @Override
+    public boolean hasNext() {
+      return next < size;
+    }
+
+    @Override
+    public T next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      T item = get(next);
+      next += 1;
+      return item;
+    }
+
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException("schematic is read-only");
+    }
+  }
+
+}
@@ -0,0 +1,55 @@
+package org.manifold.compiler.middle.serialization;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import org.manifold.compiler.NodeValue;
+import org.manifold.compiler.middle.Schematic;
+import org.manifold.compiler.middle.SchematicException;
+
+/**
+ * Reads a schematic written by SchematicBinarySerializer (see there for
+ * the file layout), either all at once or lazily.
+ */
+public class SchematicBinaryDeserializer {
+
+  // Reads the whole schematic.
+  public Schematic deserialize(File file)
+      throws IOException, SchematicException {
+    BinarySchematicReader reader = open(file);
+    Schematic sch = new Schematic(reader.readSchematicName());
+    reader.readTypes(sch);
+    NodeValue[] nodes = reader.readNodes(sch);
+    reader.readConnections(sch, nodes);
+    return sch;
+  }
+
+  /**
+   * Opens a schematic without reading its nodes and connections.
+   * Only the types are read up front, plus an index of where each node and
+   * connection is in the file; a node or connection is read the first time
+   * it is looked up or reached by iterating over getNodes() or
+   * getConnections(), and is then kept. Reading the names of the nodes
+   * and connections (e.g. getNodes().keySet()) reads nothing else, and the
+   * attribute values of a record are only decoded when one is read.
+   *
+   * The returned schematic is read-only. A file that turns out to be
+   * corrupt past the index surfaces as an UncheckedIOException from
+   * whichever accessor reached the bad record or attribute.
+   */
+  public Schematic deserializeLazily(File file)
+      throws IOException, SchematicException {
+    return new LazySchematic(open(file));
+  }
+
+  private BinarySchematicReader open(File file) throws IOException {
+    // the sections stay mapped after the channel is closed
+    try (FileChannel channel = FileChannel.open(file.toPath(),
+        StandardOpenOption.READ)) {
+      return new BinarySchematicReader(channel);
+    }
+  }
+
+}
@@ -0,0 +1,386 @@
+package org.manifold.compiler.middle.serialization;
+
+import static org.manifold.compiler.middle.serialization.SerializationHelper.getAttribute;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.manifold.compiler.BooleanValue;
+import org.manifold.compiler.ConnectionType;
+import org.manifold.compiler.ConnectionValue;
+import org.manifold.compiler.ConstraintType;
+import org.manifold.compiler.IntegerValue;
+import org.manifold.compiler.NodeTypeValue;
+import org.manifold.compiler.NodeValue;
+import org.manifold.compiler.PortTypeValue;
+import org.manifold.compiler.PortValue;
+import org.manifold.compiler.StringValue;
+import org.manifold.compiler.TypeValue;
+import org.manifold.compiler.UndefinedBehaviourError;
+import org.manifold.compiler.Value;
+import org.manifold.compiler.middle.Schematic;
+
+/**
+ * Writes a schematic in a compact binary format, read back by
+ * SchematicBinaryDeserializer. The file is laid out as:
+ *
+ * <pre>
+ * header:    magic (int32), version (int32), section count (int32)
+ * directory: one entry per section:
+ *              section ID (int32), offset (int64), length (int64)
+ * sections:  STRINGS, TYPES, NODES, CONNECTIONS, in any order
+ * </pre>
+ *
+ * Fixed-size fields are big-endian. Everything inside a section is an
+ * unsigned LEB128 varint (or a run of bytes whose length is a varint).
+ * Names are never written inline: every name is an index into the STRINGS
+ * section, which holds each distinct string once. Types are referred to by
+ * their index within their TYPES list, and nodes by their index in NODES,
+ * so a connection end is two varints instead of a "node:port" string.
+ *
+ * <pre>
+ * STRINGS:     count, then per string: byte length, UTF-8 bytes
+ * TYPES:       schematic name, then the port types, node types,
+ *              connection types and constraint types, each a list of
+ *                count, then per type: name, attribute types
+ *              where a node type also has its ports after its attributes:
+ *                count, then per port: port name, port type index
+ * NODES:       count, then per node: name, node type index, attributes,
+ *              port count, then per port: port name, attributes
+ * CONNECTIONS: count, then per connection: name, connection type index,
+ *              from node index, from port name, to node index, to port name,
+ *              attributes
+ *
+ * attribute types:  count, then per attribute: name, type name
+ * attributes:       count, then per attribute: name, value
+ * value:            tag (BinaryConsts.VALUE_*), then for integers a
+ *                   zigzag-encoded varint and for strings a string index
+ * </pre>
+ */
+public class SchematicBinarySerializer implements SerializationConsts {
+
+  public void serialize(Schematic sch, File file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file.toPath(),
+        StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+        StandardOpenOption.TRUNCATE_EXISTING)) {
+      new Writer(sch, channel).write();
+    }
+  }
+
+  // State for writing one schematic.
+  private static class Writer {
+    private final Schematic sch;
+    private final ChannelOutput out;
+    private final SerializationHelper helper;
+
+    private final Map<String, Integer> strings = new HashMap<>();
+    private final List<String> stringList = new ArrayList<>();
+    private final Map<TypeValue, Integer> typeIndices =
+        new IdentityHashMap<>();
+    private final Map<TypeValue, String> userDefinedTypeNames =
+        new IdentityHashMap<>();
+    private final Map<NodeValue, Integer> nodeIndices =
+        new IdentityHashMap<>();
+
+    private final int[] sectionIDs = {
+      BinaryConsts.SECTION_TYPES, BinaryConsts.SECTION_NODES,
+      BinaryConsts.SECTION_CONNECTIONS, BinaryConsts.SECTION_STRINGS
+    };
+    private final long[] sectionOffsets = new long[sectionIDs.length];
+    private final long[] sectionLengths = new long[sectionIDs.length];
+
+    public Writer(Schematic sch, FileChannel channel) {
+      this.sch = sch;
+      this.out = new ChannelOutput(channel);
+      this.helper = new SerializationHelper(sch);
+      for (Entry<String, TypeValue> entry
+          : sch.getUserDefinedTypes().entrySet()) {
+        userDefinedTypeNames.put(entry.getValue(), entry.getKey());
+      }
+    }
+
+    public void write() throws IOException {
+      // the directory is filled in once all sections have been written
+      long directoryOffset = BinaryConsts.HEADER_SIZE;
+      long firstSection = directoryOffset
+          + sectionIDs.length * BinaryConsts.DIRECTORY_ENTRY_SIZE;
+      out.skipTo(firstSection);
+
+      // the string table goes last, since the other sections
+      // decide which strings it holds
+      for (int i = 0; i < sectionIDs.length; ++i) {
+        sectionOffsets[i] = out.position();
+        switch (sectionIDs[i]) {
+            case BinaryConsts.SECTION_TYPES:
+              writeTypes();
+              break;
+            case BinaryConsts.SECTION_NODES:
+              writeNodes();
+              break;
+            case BinaryConsts.SECTION_CONNECTIONS:
+              writeConnections();
+              break;
+            case BinaryConsts.SECTION_STRINGS:
+              writeStrings();
+              break;
+            default:
+              throw new UndefinedBehaviourError(
+                  "unknown section " + sectionIDs[i]);
+        }
+        sectionLengths[i] = out.position() - sectionOffsets[i];
+      }
+      out.flush();
+
+      ByteBuffer header = ByteBuffer.allocate((int) firstSection);
+      header.putInt(BinaryConsts.MAGIC);
+      header.putInt(BinaryConsts.VERSION);
+      header.putInt(sectionIDs.length);
+      for (int i = 0; i < sectionIDs.length; ++i) {
+        header.putInt(sectionIDs[i]);
+        header.putLong(sectionOffsets[i]);
+        header.putLong(sectionLengths[i]);
+      }
+      header.flip();
+      out.writeAt(header, 0);
+    }
+
+    private void writeTypes() throws IOException {
+      writeString(sch.getName());
+
+      Map<String, PortTypeValue> portTypes = sch.getPortTypes();
+      out.writeVarint(portTypes.size());
+      int i = 0;
+      for (Entry<String, PortTypeValue> entry : portTypes.entrySet()) {
+        typeIndices.put(entry.getValue(), i++);
+        writeString(entry.getKey());
+        writeAttributeTypes(entry.getValue().getAttributes());
+      }
+
+      Map<String, NodeTypeValue> nodeTypes = sch.getNodeTypes();
+      out.writeVarint(nodeTypes.size());
+      i = 0;
+      for (Entry<String, NodeTypeValue> entry : nodeTypes.entrySet()) {
+        NodeTypeValue nodeType = entry.getValue();
+        typeIndices.put(nodeType, i++);
+        writeString(entry.getKey());
+        writeAttributeTypes(nodeType.getAttributes());
+        out.writeVarint(nodeType.getPorts().size());
+        for (Entry<String, PortTypeValue> port
+            : nodeType.getPorts().entrySet()) {
+          writeString(port.getKey());
+          out.writeVarint(indexOf(port.getValue()));
+        }
+      }
+
+      Map<String, ConnectionType> connectionTypes = sch.getConnectionTypes();
+      out.writeVarint(connectionTypes.size());
+      i = 0;
+      for (Entry<String, ConnectionType> entry
+          : connectionTypes.entrySet()) {
+        typeIndices.put(entry.getValue(), i++);
+        writeString(entry.getKey());
+        writeAttributeTypes(entry.getValue().getAttributes());
+      }
+
+      Map<String, ConstraintType> constraintTypes = sch.getConstraintTypes();
+      out.writeVarint(constraintTypes.size());
+      for (Entry<String, ConstraintType> entry
+          : constraintTypes.entrySet()) {
+        writeString(entry.getKey());
+        writeAttributeTypes(entry.getValue().getAttributes());
+      }
+    }
+
+    private void writeNodes() throws IOException {
+      Map<String, NodeValue> nodes = sch.getNodes();
+      out.writeVarint(nodes.size());
+      int i = 0;
+      for (Entry<String, NodeValue> entry : nodes.entrySet()) {
+        NodeValue node = entry.getValue();
+        NodeTypeValue nodeType = (NodeTypeValue) node.getType();
+        nodeIndices.put(node, i++);
+        writeString(entry.getKey());
+        out.writeVarint(indexOf(nodeType));
+        out.writeVarint(nodeType.getAttributes().size());
+        for (String attrName : nodeType.getAttributes().keySet()) {
+          writeString(attrName);
+          writeValue(getAttribute(node, attrName));
+        }
+        out.writeVarint(node.getPorts().size());
+        for (Entry<String, PortValue> port : node.getPorts().entrySet()) {
+          PortTypeValue portType = (PortTypeValue) port.getValue().getType();
+          writeString(port.getKey());
+          out.writeVarint(portType.getAttributes().size());
+          for (String attrName : portType.getAttributes().keySet()) {
+            writeString(attrName);
+            writeValue(getAttribute(port.getValue(), attrName));
+          }
+        }
+      }
+    }
+
+    private void writeConnections() throws IOException {
+      Map<String, ConnectionValue> connections = sch.getConnections();
+      out.writeVarint(connections.size());
+      for (Entry<String, ConnectionValue> entry : connections.entrySet()) {
+        ConnectionValue conn = entry.getValue();
+        ConnectionType connType = (ConnectionType) conn.getType();
+        writeString(entry.getKey());
+        out.writeVarint(indexOf(connType));
+        writePortReference(conn.getFrom());
+        writePortReference(conn.getTo());
+        out.writeVarint(connType.getAttributes().size());
+        for (String attrName : connType.getAttributes().keySet()) {
+          writeString(attrName);
+          writeValue(getAttribute(conn, attrName));
+        }
+      }
+    }
+
+    private void writeStrings() throws IOException {
+      out.writeVarint(stringList.size());
+      for (String s : stringList) {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeVarint(bytes.length);
+        out.writeBytes(bytes);
+      }
+    }
+
+    private void writeString(String s) throws IOException {
+      Integer index = strings.get(s);
+      if (index == null) {
+        index = stringList.size();
+        strings.put(s, index);
+        stringList.add(s);
+      }
+      out.writeVarint(index);
+    }
+
+    private void writeAttributeTypes(Map<String, TypeValue> attributes)
+        throws IOException {
+      out.writeVarint(attributes.size());
+      for (Entry<String, TypeValue> attr : attributes.entrySet()) {
+        String typeName = userDefinedTypeNames.get(attr.getValue());
+        if (typeName == null) {
+          throw new IllegalArgumentException("type of attribute '"
+              + attr.getKey() + "' is not defined in the schematic");
+        }
+        writeString(attr.getKey());
+        writeString(typeName);
+      }
+    }
+
+    private void writeValue(Value value) throws IOException {
+      if (value instanceof BooleanValue) {
+        out.writeVarint(((BooleanValue) value).toBoolean()
+            ? BinaryConsts.VALUE_TRUE : BinaryConsts.VALUE_FALSE);
+      } else if (value instanceof IntegerValue) {
+        int i = ((IntegerValue) value).toInteger();
+        out.writeVarint(BinaryConsts.VALUE_INTEGER);
+        // zigzag, so that small negative numbers stay short
+        out.writeVarint(((i << 1) ^ (i >> 31)) & 0xffffffffL);
+      } else if (value instanceof StringValue) {
+        out.writeVarint(BinaryConsts.VALUE_STRING);
+        writeString(value.toString());
+      } else {
+        throw new UndefinedBehaviourError(
+            "cannot serialize attribute value " + value.toString());
+      }
+    }
+
+    private void writePortReference(PortValue port) throws IOException {
+      NodeValue node = port.getParent();
+      Integer nodeIndex = nodeIndices.get(node);
+      if (nodeIndex == null) {
+        throw new IllegalArgumentException(
+            "connection to a node that is not in the schematic");
+      }
+      out.writeVarint(nodeIndex);
+      writeString(helper.getPortName(port));
+    }
+
+    private int indexOf(TypeValue type) {
+      Integer index = typeIndices.get(type);
+      if (index == null) {
+        throw new IllegalArgumentException(
+            "type " + type.toString() + " is not defined in the schematic");
+      }
+      return index;
+    }
+  }
+
+  // Buffered sequential output to a file channel that keeps track of
+  // the current file position.
+  private static class ChannelOutput {
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16);
+    private long flushed = 0;
+
+    public ChannelOutput(FileChannel channel) {
+      this.channel = channel;
+    }
+
+    public long position() {
+      return flushed + buffer.position();
+    }
+
+    // Moves the write position forward, leaving the skipped bytes to be
+    // filled in later with writeAt().
+    public void skipTo(long position) throws IOException {
+      flush();
+      flushed = position;
+    }
+
+    public void writeVarint(long value) throws IOException {
+      while ((value & ~0x7fL) != 0) {
+        writeByte((int) ((value & 0x7f) | 0x80));
+        value >>>= 7;
+      }
+      writeByte((int) value);
+    }
+
+    public void writeByte(int b) throws IOException {
+      if (!buffer.hasRemaining()) {
+        flush();
+      }
+      buffer.put((byte) b);
+    }
+
+    public void writeBytes(byte[] bytes) throws IOException {
+      int offset = 0;
+      while (offset < bytes.length) {
+        if (!buffer.hasRemaining()) {
+          flush();
+        }
+        int n = Math.min(buffer.remaining(), bytes.length - offset);
+        buffer.put(bytes, offset, n);
+        offset += n;
+      }
+    }
+
+    public void flush() throws IOException {
+      buffer.flip();
+      while (buffer.hasRemaining()) {
+        flushed += channel.write(buffer, flushed);
+      }
+      buffer.clear();
+    }
+
+    public void writeAt(ByteBuffer bytes, long position) throws IOException {
+      while (bytes.hasRemaining()) {
+        position += channel.write(bytes, position);
+      }
+    }
+  }
+
+}
@@ -1,17 +1,30 @@
 package org.manifold.compiler.middle.serialization;
 
 
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.manifold.compiler.AttributeSchema;
+import org.manifold.compiler.Attributes;
+import org.manifold.compiler.BooleanTypeValue;
 import org.manifold.compiler.BooleanValue;
 import org.manifold.compiler.ConnectionType;
 import org.manifold.compiler.ConnectionValue;
 import org.manifold.compiler.ConstraintType;
+import org.manifold.compiler.IntegerTypeValue;
 import org.manifold.compiler.IntegerValue;
-import org.manifold.compiler.InvalidAttributeException;
-import org.manifold.compiler.MultipleAssignmentException;
 import org.manifold.compiler.MultipleDefinitionException;
 import org.manifold.compiler.NodeTypeValue;
 import org.manifold.compiler.NodeValue;
@@ -19,7 +32,6 @@ import org.manifold.compiler.PortTypeValue;
 import org.manifold.compiler.PortValue;
 import org.manifold.compiler.StringTypeValue;
 import org.manifold.compiler.StringValue;
-import org.manifold.compiler.TypeMismatchException;
 import org.manifold.compiler.TypeValue;
 import org.manifold.compiler.UndeclaredAttributeException;
 import org.manifold.compiler.UndeclaredIdentifierException;
@@ -28,16 +40,39 @@ import org.manifold.compiler.middle.Schematic;
 import org.manifold.compiler.middle.SchematicException;
 
 import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
 import com.google.gson.JsonSyntaxException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 
 public class SchematicDeserializer implements SerializationConsts {
 
   private Gson gson = new GsonBuilder().create();
 
+  private boolean parallel = false;
+
+  // Many nodes of a type are configured identically, so the attributes
+  // read so far are kept and shared between all the nodes (and ports and
+  // connections) that have the same attribute values, as are string
+  // values. Both live as long as the deserializer.
+  private final ConcurrentMap<AttributeKey, Attributes> attributeSets =
+      new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, StringValue> stringValues =
+      new ConcurrentHashMap<>();
+
+  // Builds nodes and then connections on all available cores. Types are
+  // still read serially: there are few of them, and they refer to each
+  // other. Either way, the result is the same.
+  public void setParallel(boolean parallel) {
+    this.parallel = parallel;
+  }
+
   private Map<String, TypeValue> getTypeDefAttributes(Schematic sch,
       JsonObject obj) throws UndeclaredIdentifierException {
     JsonObject attributeMapJson = obj.getAsJsonObject(GlobalConsts.ATTRIBUTES);
@@ -56,53 +91,69 @@ public class SchematicDeserializer implements SerializationConsts {
     return attributeMap;
   }
 
-  private Map<String, Value> getValueAttributes(Schematic sch,
-      Map<String, TypeValue> expectedTypes, JsonObject obj)
-      throws UndeclaredIdentifierException, UndeclaredAttributeException {
-    JsonObject attributeMapJson = obj.getAsJsonObject(GlobalConsts.ATTRIBUTES);
-    HashMap<String, Value> attributeMap = new HashMap<>();
+  private Attributes getValueAttributes(AttributeSchema schema,
+      JsonObject obj) throws SchematicException {
+    return readValueAttributes(schema,
+        obj.getAsJsonObject(GlobalConsts.ATTRIBUTES));
+  }
 
-    if (attributeMapJson == null) {
-      return attributeMap;
+  // Reads an attribute object itself, e.g. the value of an "attributes"
+  // key or of one port under "portAttrs".
+  private Attributes readValueAttributes(AttributeSchema schema,
+      JsonObject attributeMapJson) throws SchematicException {
+    if (attributeMapJson == null || attributeMapJson.entrySet().isEmpty()) {
+      return Attributes.of(schema, ImmutableMap.<String, Value>of());
+    }
+    AttributeKey key = new AttributeKey(schema, attributeMapJson);
+    Attributes cached = attributeSets.get(key);
+    if (cached != null) {
+      return cached;
     }
 
-    // Ideally, some kind of createInstance(String) method on each TypeValue?
-    TypeValue bool = sch.getUserDefinedType("Bool");
-    TypeValue integer = sch.getUserDefinedType("Int");
-    TypeValue str = sch.getUserDefinedType("String");
-
+    Map<String, Value> attributeMap = new HashMap<>();
     for (Entry<String, JsonElement> attrEntry : attributeMapJson.entrySet()) {
-      TypeValue type = expectedTypes.get(attrEntry.getKey());
-      Value attrValue = null;
-
       String valueString = attrEntry.getValue().getAsString();
-
-      if (type == null) {
-        throw new UndeclaredAttributeException(attrEntry.getKey());
-      }
-
-      if (type.equals(bool)) {
-        if (!(Boolean.TRUE.toString().equals(valueString) ||
-              Boolean.FALSE.toString().equals(valueString))) {
-          throw new IllegalArgumentException(String.format(
-              "Expected boolean value of true or false, got %s", valueString));
-        }
-        attrValue = BooleanValue.getInstance(Boolean.parseBoolean(valueString));
-      } else if (type.equals(integer)) {
-        attrValue = new IntegerValue(Integer.valueOf(valueString));
-      } else if (type.equals(str)) {
-        attrValue = new StringValue(StringTypeValue.getInstance(), valueString);
-      } else {
-        throw new UndeclaredAttributeException(attrEntry.getKey());
-      }
-
-      attributeMap.put(attrEntry.getKey(), attrValue);
+      attributeMap.put(attrEntry.getKey(), getValueAttribute(
+          schema, attrEntry.getKey(), valueString));
     }
 
     // TODO (max): read these, dependent on IR attribute/type overhaul
 
+    return cacheAttributes(key, Attributes.of(schema, attributeMap));
+  }
 
-    return attributeMap;
+  private Value getValueAttribute(AttributeSchema schema, String attrName,
+      String valueString) throws UndeclaredAttributeException {
+    // Ideally, some kind of createInstance(String) method on each TypeValue?
+    // (Bool, Int and String are always these instances in a schematic.)
+    int slot = schema.getSlot(attrName);
+    if (slot == -1) {
+      throw new UndeclaredAttributeException(attrName);
+    }
+    TypeValue type = schema.getType(slot);
+
+    if (type == BooleanTypeValue.getInstance()) {
+      if (!(Boolean.TRUE.toString().equals(valueString) ||
+            Boolean.FALSE.toString().equals(valueString))) {
+        throw new IllegalArgumentException(String.format(
+            "Expected boolean value of true or false, got %s", valueString));
+      }
+      return BooleanValue.getInstance(Boolean.parseBoolean(valueString));
+    } else if (type == IntegerTypeValue.getInstance()) {
+      return IntegerValue.getInstance(Integer.parseInt(valueString));
+    } else if (type == StringTypeValue.getInstance()) {
+      StringValue value = stringValues.get(valueString);
+      if (value == null) {
+        value = new StringValue(StringTypeValue.getInstance(), valueString);
+        StringValue existing = stringValues.putIfAbsent(valueString, value);
+        if (existing != null) {
+          value = existing;
+        }
+      }
+      return value;
+    } else {
+      throw new UndeclaredAttributeException(attrName);
+    }
   }
 
   private PortValue getPortValue(Schematic sch, String ref)
@@ -186,27 +237,61 @@ public class SchematicDeserializer implements SerializationConsts {
    * }
    * </pre>
    */
-  private void deserializeNodes(Schematic sch, JsonObject in)
+  private void deserializeNodes(final Schematic sch, JsonObject in)
       throws SchematicException {
+    if (parallel) {
+      ParallelSection<JsonObject, NodeValue> nodes =
+          new ParallelSection<JsonObject, NodeValue>() {
+            @Override
+            protected NodeValue build(JsonObject def)
+                throws SchematicException {
+              return buildNode(sch, def);
+            }
+
+            @Override
+            protected void store(String name, NodeValue node)
+                throws SchematicException {
+              sch.addNode(name, node);
+            }
+          };
+      for (Entry<String, JsonElement> entry : in.entrySet()) {
+        nodes.add(entry.getKey(), entry.getValue().getAsJsonObject());
+      }
+      nodes.finish();
+      return;
+    }
     for (Entry<String, JsonElement> entry : in.entrySet()) {
-      JsonObject nodeDef = entry.getValue().getAsJsonObject();
+      sch.addNode(entry.getKey(),
+          buildNode(sch, entry.getValue().getAsJsonObject()));
+    }
+  }
 
-      NodeTypeValue nodeType = sch
-          .getNodeType(nodeDef.get(GlobalConsts.TYPE).getAsString());
-      Map<String, Value> attributeMap = getValueAttributes(sch, nodeType
-          .getAttributes(), nodeDef);
-      Map<String, Map<String, Value>> portAttrMap = new HashMap<>();
+  private NodeValue buildNode(Schematic sch, JsonObject nodeDef)
+      throws SchematicException {
+    NodeTypeValue nodeType = sch
+        .getNodeType(nodeDef.get(GlobalConsts.TYPE).getAsString());
+    Attributes attributes = getValueAttributes(nodeType
+        .getAttributeSchema(), nodeDef);
+    Map<String, Attributes> portAttrMap = new HashMap<>();
 
-      JsonObject portAttrJson = nodeDef.getAsJsonObject(NodeConsts.PORT_ATTRS);
+    JsonObject portAttrJson = nodeDef.getAsJsonObject(NodeConsts.PORT_ATTRS);
 
-      for (Entry<String, JsonElement> p : portAttrJson.entrySet()) {
-        portAttrMap.put(p.getKey(), getValueAttributes(sch, nodeType
-            .getAttributes(), p.getValue().getAsJsonObject()));
-      }
+    for (Entry<String, JsonElement> p : portAttrJson.entrySet()) {
+      portAttrMap.put(p.getKey(), readValueAttributes(getPortAttributeSchema(
+          nodeType, p.getKey()), p.getValue().getAsJsonObject()));
+    }
+
+    return new NodeValue(nodeType, attributes, portAttrMap);
+  }
 
-      NodeValue node = new NodeValue(nodeType, attributeMap, portAttrMap);
-      sch.addNode(entry.getKey(), node);
+  // Port attributes are declared on the port's type, not the node's.
+  private AttributeSchema getPortAttributeSchema(NodeTypeValue nodeType,
+      String portName) throws UndeclaredIdentifierException {
+    PortTypeValue portType = nodeType.getPorts().get(portName);
+    if (portType == null) {
+      throw new UndeclaredIdentifierException(portName);
     }
+    return portType.getAttributeSchema();
   }
 
   /**
@@ -222,27 +307,47 @@ public class SchematicDeserializer implements SerializationConsts {
    * }
    * </pre>
    */
-  private void deserializeConnections(Schematic sch, JsonObject in)
-      throws UndeclaredIdentifierException, UndeclaredAttributeException,
-      InvalidAttributeException, MultipleAssignmentException,
-      TypeMismatchException {
-
+  private void deserializeConnections(final Schematic sch, JsonObject in)
+      throws SchematicException {
+    if (parallel) {
+      ParallelSection<JsonObject, ConnectionValue> connections =
+          new ParallelSection<JsonObject, ConnectionValue>() {
+            @Override
+            protected ConnectionValue build(JsonObject def)
+                throws SchematicException {
+              return buildConnection(sch, def);
+            }
+
+            @Override
+            protected void store(String name, ConnectionValue conn)
+                throws SchematicException {
+              sch.addConnection(name, conn);
+            }
+          };
+      for (Entry<String, JsonElement> entry : in.entrySet()) {
+        connections.add(entry.getKey(), entry.getValue().getAsJsonObject());
+      }
+      connections.finish();
+      return;
+    }
     for (Entry<String, JsonElement> entry : in.entrySet()) {
-      JsonObject obj = entry.getValue().getAsJsonObject();
-
-      ConnectionType conType = sch.getConnectionType(obj.get(GlobalConsts.TYPE)
-          .getAsString());
-      Map<String, Value> attributeMap = getValueAttributes(sch, conType
-          .getAttributes(), obj);
-      ConnectionValue conVal = new ConnectionValue(conType,
-          getPortValue(sch, obj.get(ConnectionConsts.FROM).getAsString()),
-          getPortValue(sch, obj.get(ConnectionConsts.TO).getAsString()),
-          attributeMap);
-
-      sch.addConnection(entry.getKey(), conVal);
+      sch.addConnection(entry.getKey(),
+          buildConnection(sch, entry.getValue().getAsJsonObject()));
     }
   }
 
+  private ConnectionValue buildConnection(Schematic sch, JsonObject obj)
+      throws SchematicException {
+    ConnectionType conType = sch.getConnectionType(obj.get(GlobalConsts.TYPE)
+        .getAsString());
+    Attributes attributes = getValueAttributes(conType
+        .getAttributeSchema(), obj);
+    return new ConnectionValue(conType,
+        getPortValue(sch, obj.get(ConnectionConsts.FROM).getAsString()),
+        getPortValue(sch, obj.get(ConnectionConsts.TO).getAsString()),
+        attributes);
+  }
+
   public Schematic deserialize(JsonObject in) {
     Schematic sch = new Schematic(
         in.get(GlobalConsts.SCHEMATIC_NAME).getAsString());
@@ -267,4 +372,384 @@ public class SchematicDeserializer implements SerializationConsts {
 
     return sch;
   }
+
+  // The sections that must be read before each section can be.
+  private static final Map<String, List<String>> SECTION_PREREQUISITES =
+      ImmutableMap.<String, List<String>>builder()
+      .put(SchematicConsts.PORT_TYPES, ImmutableList.<String>of())
+      .put(SchematicConsts.NODE_TYPES,
+          ImmutableList.of(SchematicConsts.PORT_TYPES))
+      .put(SchematicConsts.CONNECTION_TYPES, ImmutableList.<String>of())
+      .put(SchematicConsts.CONSTRAINT_TYPES, ImmutableList.<String>of())
+      .put(SchematicConsts.NODE_DEFS,
+          ImmutableList.of(SchematicConsts.NODE_TYPES))
+      .put(SchematicConsts.CONNECTION_DEFS, ImmutableList.of(
+          SchematicConsts.CONNECTION_TYPES, SchematicConsts.NODE_DEFS))
+      .build();
+
+  /**
+   * Reads a schematic in the same format as deserialize(JsonObject), but
+   * straight from a character stream, one token at a time, without first
+   * building a JSON tree of the whole input.
+   *
+   * Sections are read as they arrive. The usual order (as written by
+   * SchematicSerializer) is name, types, nodes, then connections; a section
+   * that arrives before the sections it depends on is parsed into a tree
+   * and read once the whole input has been seen.
+   */
+  public Schematic deserialize(Reader reader) throws IOException {
+    JsonReader in = new JsonReader(reader);
+    Schematic sch = null;
+    Set<String> sectionsRead = new HashSet<>();
+    Map<String, JsonObject> deferredSections = new HashMap<>();
+
+    try {
+      in.beginObject();
+      while (in.hasNext()) {
+        String section = in.nextName();
+        if (section.equals(GlobalConsts.SCHEMATIC_NAME)) {
+          sch = new Schematic(in.nextString());
+        } else if (!SECTION_PREREQUISITES.containsKey(section)) {
+          // user-defined types and constraints are not read yet
+          in.skipValue();
+        } else if (sch != null && sectionsRead.containsAll(
+            SECTION_PREREQUISITES.get(section))) {
+          deserializeSection(sch, section, in);
+          sectionsRead.add(section);
+        } else {
+          deferredSections.put(section,
+              new JsonParser().parse(in).getAsJsonObject());
+        }
+      }
+      in.endObject();
+
+      if (sch == null) {
+        throw new JsonSyntaxException("schematic has no name");
+      }
+      // SECTION_PREREQUISITES lists sections in dependency order
+      for (String section : SECTION_PREREQUISITES.keySet()) {
+        JsonObject deferred = deferredSections.get(section);
+        if (deferred != null) {
+          deserializeSection(sch, section, deferred);
+        }
+      }
+    } catch (SchematicException e) {
+      Throwables.propagate(e);
+    }
+
+    return sch;
+  }
+
+  private void deserializeSection(Schematic sch, String section,
+      JsonObject in) throws SchematicException {
+    if (section.equals(SchematicConsts.PORT_TYPES)) {
+      deserializePortTypes(sch, in);
+    } else if (section.equals(SchematicConsts.NODE_TYPES)) {
+      deserializeNodeTypes(sch, in);
+    } else if (section.equals(SchematicConsts.CONNECTION_TYPES)) {
+      deserializeConnectionTypes(sch, in);
+    } else if (section.equals(SchematicConsts.CONSTRAINT_TYPES)) {
+      deserializeConstraintTypes(sch, in);
+    } else if (section.equals(SchematicConsts.NODE_DEFS)) {
+      deserializeNodes(sch, in);
+    } else if (section.equals(SchematicConsts.CONNECTION_DEFS)) {
+      deserializeConnections(sch, in);
+    }
+  }
+
+  // Reads one section, e.g. { name: definition, ... }, from the stream.
+  private void deserializeSection(final Schematic sch, String section,
+      JsonReader in) throws IOException, SchematicException {
+    ParallelSection<RawDefinition, ?> values = null;
+    if (parallel && section.equals(SchematicConsts.NODE_DEFS)) {
+      values = new ParallelSection<RawDefinition, NodeValue>() {
+        @Override
+        protected NodeValue build(RawDefinition def)
+            throws SchematicException {
+          return buildNode(sch, def);
+        }
+
+        @Override
+        protected void store(String name, NodeValue node)
+            throws SchematicException {
+          sch.addNode(name, node);
+        }
+      };
+    } else if (parallel && section.equals(SchematicConsts.CONNECTION_DEFS)) {
+      values = new ParallelSection<RawDefinition, ConnectionValue>() {
+        @Override
+        protected ConnectionValue build(RawDefinition def)
+            throws SchematicException {
+          return buildConnection(sch, def);
+        }
+
+        @Override
+        protected void store(String name, ConnectionValue conn)
+            throws SchematicException {
+          sch.addConnection(name, conn);
+        }
+      };
+    }
+
+    in.beginObject();
+    while (in.hasNext()) {
+      String name = in.nextName();
+      RawDefinition def = readDefinition(in);
+      if (values != null) {
+        values.add(name, def);
+      } else if (section.equals(SchematicConsts.PORT_TYPES)) {
+        sch.addPortType(name,
+            new PortTypeValue(getTypeDefAttributes(sch, def.attributes)));
+      } else if (section.equals(SchematicConsts.NODE_TYPES)) {
+        Map<String, PortTypeValue> portMap = new HashMap<>();
+        for (Entry<String, String> port : def.ports.entrySet()) {
+          portMap.put(port.getKey(), sch.getPortType(port.getValue()));
+        }
+        sch.addNodeType(name, new NodeTypeValue(
+            getTypeDefAttributes(sch, def.attributes), portMap));
+      } else if (section.equals(SchematicConsts.CONNECTION_TYPES)) {
+        sch.addConnectionType(name,
+            new ConnectionType(getTypeDefAttributes(sch, def.attributes)));
+      } else if (section.equals(SchematicConsts.CONSTRAINT_TYPES)) {
+        sch.addConstraintType(name,
+            new ConstraintType(getTypeDefAttributes(sch, def.attributes)));
+      } else if (section.equals(SchematicConsts.NODE_DEFS)) {
+        sch.addNode(name, buildNode(sch, def));
+      } else if (section.equals(SchematicConsts.CONNECTION_DEFS)) {
+        sch.addConnection(name, buildConnection(sch, def));
+      }
+    }
+    in.endObject();
+    if (values != null) {
+      values.finish();
+    }
+  }
+
+  private NodeValue buildNode(Schematic sch, RawDefinition def)
+      throws SchematicException {
+    NodeTypeValue nodeType = sch.getNodeType(def.type);
+    Map<String, Attributes> portAttrMap = new HashMap<>();
+    for (Entry<String, Map<String, String>> p : def.portAttrs.entrySet()) {
+      portAttrMap.put(p.getKey(), getValueAttributes(
+          getPortAttributeSchema(nodeType, p.getKey()), p.getValue()));
+    }
+    return new NodeValue(nodeType, getValueAttributes(
+        nodeType.getAttributeSchema(), def.attributes), portAttrMap);
+  }
+
+  private ConnectionValue buildConnection(Schematic sch, RawDefinition def)
+      throws SchematicException {
+    ConnectionType conType = sch.getConnectionType(def.type);
+    return new ConnectionValue(conType,
+        getPortValue(sch, def.from), getPortValue(sch, def.to),
+        getValueAttributes(conType.getAttributeSchema(), def.attributes));
+  }
+
+  private Map<String, TypeValue> getTypeDefAttributes(Schematic sch,
+      Map<String, String> typeNames) throws UndeclaredIdentifierException {
+    Map<String, TypeValue> attributeMap = new HashMap<>();
+    for (Entry<String, String> attrEntry : typeNames.entrySet()) {
+      attributeMap.put(attrEntry.getKey(),
+          sch.getUserDefinedType(attrEntry.getValue()));
+    }
+    return attributeMap;
+  }
+
+  private Attributes getValueAttributes(AttributeSchema schema,
+      Map<String, String> values) throws SchematicException {
+    if (values.isEmpty()) {
+      return Attributes.of(schema, ImmutableMap.<String, Value>of());
+    }
+    AttributeKey key = new AttributeKey(schema, values);
+    Attributes cached = attributeSets.get(key);
+    if (cached != null) {
+      return cached;
+    }
+    Map<String, Value> attributeMap = new HashMap<>();
+    for (Entry<String, String> attrEntry : values.entrySet()) {
+      attributeMap.put(attrEntry.getKey(), getValueAttribute(
+          schema, attrEntry.getKey(), attrEntry.getValue()));
+    }
+    return cacheAttributes(key, Attributes.of(schema, attributeMap));
+  }
+
+  private Attributes cacheAttributes(AttributeKey key, Attributes attributes) {
+    Attributes existing = attributeSets.putIfAbsent(key, attributes);
+    return existing == null ? attributes : existing;
+  }
+
+  // Identifies a set of attribute values as read from the input (a
+  // JsonObject or a map of strings), together with the schema they were
+  // read against; the same strings can mean different values under
+  // different types.
+  private static class AttributeKey {
+    private final AttributeSchema schema;
+    private final Object values;
+
+    public AttributeKey(AttributeSchema schema, Object values) {
+      this.schema = schema;
+      this.values = values;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      if (!(other instanceof AttributeKey)) {
+        return false;
+      }
+      AttributeKey key = (AttributeKey) other;
+      return schema == key.schema && values.equals(key.values);
+    }
+
+    @Override
+    public int hashCode() {
+      return System.identityHashCode(schema) * 31 + values.hashCode();
+    }
+  }
+
+  // The fields of a single type, node or connection definition, as
+  // strings. Fields can come in any order, so a definition is read
+  // completely before any of it is interpreted.
+  private static class RawDefinition {
+    private String type = null;
+    private String from = null;
+    private String to = null;
+    private Map<String, String> attributes = new HashMap<>();
+    private Map<String, String> ports = new HashMap<>();
+    private Map<String, Map<String, String>> portAttrs = new HashMap<>();
+  }
+
+  private static RawDefinition readDefinition(JsonReader in)
+      throws IOException {
+    RawDefinition def = new RawDefinition();
+    in.beginObject();
+    while (in.hasNext()) {
+      String field = in.nextName();
+      if (field.equals(GlobalConsts.TYPE)) {
+        def.type = in.nextString();
+      } else if (field.equals(GlobalConsts.ATTRIBUTES)) {
+        def.attributes = readStringMap(in);
+      } else if (field.equals(NodeTypeConsts.PORT_MAP)) {
+        def.ports = readStringMap(in);
+      } else if (field.equals(NodeConsts.PORT_ATTRS)) {
+        in.beginObject();
+        while (in.hasNext()) {
+          String portName = in.nextName();
+          def.portAttrs.put(portName, readStringMap(in));
+        }
+        in.endObject();
+      } else if (field.equals(ConnectionConsts.FROM)) {
+        def.from = in.nextString();
+      } else if (field.equals(ConnectionConsts.TO)) {
+        def.to = in.nextString();
+      } else {
+        in.skipValue();
+      }
+    }
+    in.endObject();
+    return def;
+  }
+
+  // Reads { key: value, ... } where every value is a string, number or
+  // boolean, keeping each value as a string.
+  private static Map<String, String> readStringMap(JsonReader in)
+      throws IOException {
+    Map<String, String> map = new HashMap<>();
+    in.beginObject();
+    while (in.hasNext()) {
+      String key = in.nextName();
+      if (in.peek() == JsonToken.BOOLEAN) {
+        map.put(key, Boolean.toString(in.nextBoolean()));
+      } else {
+        map.put(key, in.nextString());
+      }
+    }
+    in.endObject();
+    return map;
+  }
+
+  // Definitions per chunk when building a section in parallel.
+  private static final int PARALLEL_GRAIN = 1024;
+
+  // Builds the values of a node or connection section in parallel.
+  // Definitions are handed over with add() as they are read and built in
+  // chunks on the common pool while the caller keeps reading; finish()
+  // waits for every chunk and then stores the values in the schematic in
+  // input order, so names clash exactly as they would when read serially.
+  //
+  // Building only reads the schematic (types, and nodes for connections),
+  // which is not modified until every chunk is done.
+  private abstract static class ParallelSection<D, V> {
+    private final List<String> names = new ArrayList<>();
+    private final List<BuildChunk> chunks = new ArrayList<>();
+    private List<D> pending = new ArrayList<>();
+    private final AtomicReference<SchematicException> failure =
+        new AtomicReference<>();
+
+    protected abstract V build(D def) throws SchematicException;
+
+    protected abstract void store(String name, V value)
+        throws SchematicException;
+
+    public void add(String name, D def) {
+      names.add(name);
+      pending.add(def);
+      if (pending.size() == PARALLEL_GRAIN) {
+        submitPending();
+      }
+    }
+
+    private void submitPending() {
+      BuildChunk chunk = new BuildChunk(pending);
+      ForkJoinPool.commonPool().execute(chunk);
+      chunks.add(chunk);
+      pending = new ArrayList<>();
+    }
+
+    public void finish() throws SchematicException {
+      if (!pending.isEmpty()) {
+        submitPending();
+      }
+      for (BuildChunk chunk : chunks) {
+        chunk.join();
+      }
+      if (failure.get() != null) {
+        throw failure.get();
+      }
+      int i = 0;
+      for (BuildChunk chunk : chunks) {
+        for (V value : chunk.values) {
+          store(names.get(i), value);
+          i += 1;
+        }
+      }
+    }
+
+    // A RecursiveAction cannot throw checked exceptions, so the first one
+    // thrown by any chunk is kept and rethrown by finish().
+    private class BuildChunk extends RecursiveAction {
+      private static final long serialVersionUID = 1L;
+
+      private final List<D> defs;
+      private final List<V> values;
+
+      public BuildChunk(List<D> defs) {
+        this.defs = defs;
+        this.values = new ArrayList<>(defs.size());
+      }
+
+      @Override
+      protected void compute() {
+        for (D def : defs) {
+          if (failure.get() != null) {
+            return;
+          }
+          try {
+            values.add(build(def));
+          } catch (SchematicException e) {
+            failure.compareAndSet(null, e);
+          }
+        }
+      }
+    }
+  }
 }
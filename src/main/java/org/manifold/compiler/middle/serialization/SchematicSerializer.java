@@ -1,14 +1,231 @@
 package org.manifold.compiler.middle.serialization;
 
+import static org.manifold.compiler.middle.serialization.SerializationHelper.getAttribute;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.manifold.compiler.BooleanValue;
+import org.manifold.compiler.ConnectionType;
+import org.manifold.compiler.ConnectionValue;
+import org.manifold.compiler.ConstraintType;
+import org.manifold.compiler.IntegerValue;
+import org.manifold.compiler.NodeTypeValue;
+import org.manifold.compiler.NodeValue;
+import org.manifold.compiler.PortTypeValue;
+import org.manifold.compiler.PortValue;
+import org.manifold.compiler.StringValue;
+import org.manifold.compiler.TypeValue;
+import org.manifold.compiler.UndefinedBehaviourError;
+import org.manifold.compiler.Value;
 import org.manifold.compiler.middle.Schematic;
 
 import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonWriter;
 
+/**
+ * Writes a schematic in the format read by SchematicDeserializer.
+ * The output is streamed through a JsonWriter one definition at a time,
+ * so no JSON tree of the whole schematic is ever built.
+ * Constraints are not written yet, since they are not read either.
+ */
 public class SchematicSerializer implements SerializationConsts {
 
+  // Returns the serialized schematic as a JSON tree.
+  // This builds the whole tree in memory; for large schematics,
+  // stream to a Writer or OutputStream instead.
   public JsonObject serialize(Schematic sch) {
-    JsonObject schJson = new JsonObject();
+    StringWriter out = new StringWriter();
+    try {
+      serialize(sch, out);
+    } catch (IOException e) {
+      // StringWriter does not throw
+      throw new UndefinedBehaviourError(
+          "could not serialize schematic (" + e.getMessage() + ")");
+    }
+    return new JsonParser().parse(out.toString()).getAsJsonObject();
+  }
+
+  // Writes the schematic to `out` as UTF-8. The stream is flushed
+  // but not closed.
+  public void serialize(Schematic sch, OutputStream out) throws IOException {
+    Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+    serialize(sch, writer);
+    writer.flush();
+  }
+
+  // Writes the schematic to `out`. The writer is flushed but not closed.
+  public void serialize(Schematic sch, Writer out) throws IOException {
+    JsonWriter json = new JsonWriter(out);
+    TypeNames names = new TypeNames(sch);
+    SerializationHelper helper = new SerializationHelper(sch);
+
+    json.beginObject();
+    json.name(GlobalConsts.SCHEMATIC_NAME).value(sch.getName());
+
+    json.name(SchematicConsts.USER_DEF_TYPES).beginObject();
+    for (String typeName : sch.getUserDefinedTypes().keySet()) {
+      json.name(typeName).beginObject().endObject();
+    }
+    json.endObject();
+
+    json.name(SchematicConsts.PORT_TYPES).beginObject();
+    for (Entry<String, PortTypeValue> entry : sch.getPortTypes().entrySet()) {
+      json.name(entry.getKey()).beginObject();
+      writeTypeAttributes(json, names, entry.getValue().getAttributes());
+      json.endObject();
+    }
+    json.endObject();
+
+    json.name(SchematicConsts.NODE_TYPES).beginObject();
+    for (Entry<String, NodeTypeValue> entry : sch.getNodeTypes().entrySet()) {
+      NodeTypeValue nodeType = entry.getValue();
+      json.name(entry.getKey()).beginObject();
+      writeTypeAttributes(json, names, nodeType.getAttributes());
+      json.name(NodeTypeConsts.PORT_MAP).beginObject();
+      for (Entry<String, PortTypeValue> port
+          : nodeType.getPorts().entrySet()) {
+        json.name(port.getKey()).value(names.of(port.getValue()));
+      }
+      json.endObject();
+      json.endObject();
+    }
+    json.endObject();
+
+    json.name(SchematicConsts.CONNECTION_TYPES).beginObject();
+    for (Entry<String, ConnectionType> entry
+        : sch.getConnectionTypes().entrySet()) {
+      json.name(entry.getKey()).beginObject();
+      writeTypeAttributes(json, names, entry.getValue().getAttributes());
+      json.endObject();
+    }
+    json.endObject();
+
+    json.name(SchematicConsts.CONSTRAINT_TYPES).beginObject();
+    for (Entry<String, ConstraintType> entry
+        : sch.getConstraintTypes().entrySet()) {
+      json.name(entry.getKey()).beginObject();
+      writeTypeAttributes(json, names, entry.getValue().getAttributes());
+      json.endObject();
+    }
+    json.endObject();
+
+    json.name(SchematicConsts.NODE_DEFS).beginObject();
+    for (Entry<String, NodeValue> entry : sch.getNodes().entrySet()) {
+      NodeValue node = entry.getValue();
+      NodeTypeValue nodeType = (NodeTypeValue) node.getType();
+      json.name(entry.getKey()).beginObject();
+      json.name(GlobalConsts.TYPE).value(names.of(nodeType));
+      json.name(GlobalConsts.ATTRIBUTES).beginObject();
+      for (String attrName : nodeType.getAttributes().keySet()) {
+        json.name(attrName);
+        writeValue(json, getAttribute(node, attrName));
+      }
+      json.endObject();
+      json.name(NodeConsts.PORT_ATTRS).beginObject();
+      for (Entry<String, PortValue> port : node.getPorts().entrySet()) {
+        PortTypeValue portType = (PortTypeValue) port.getValue().getType();
+        json.name(port.getKey()).beginObject();
+        for (String attrName : portType.getAttributes().keySet()) {
+          json.name(attrName);
+          writeValue(json, getAttribute(port.getValue(), attrName));
+        }
+        json.endObject();
+      }
+      json.endObject();
+      json.endObject();
+    }
+    json.endObject();
 
-    return schJson;
+    json.name(SchematicConsts.CONNECTION_DEFS).beginObject();
+    for (Entry<String, ConnectionValue> entry
+        : sch.getConnections().entrySet()) {
+      ConnectionValue conn = entry.getValue();
+      ConnectionType connType = (ConnectionType) conn.getType();
+      json.name(entry.getKey()).beginObject();
+      json.name(GlobalConsts.TYPE).value(names.of(connType));
+      json.name(GlobalConsts.ATTRIBUTES).beginObject();
+      for (String attrName : connType.getAttributes().keySet()) {
+        json.name(attrName);
+        writeValue(json, getAttribute(conn, attrName));
+      }
+      json.endObject();
+      json.name(ConnectionConsts.FROM)
+          .value(portReference(sch, helper, conn.getFrom()));
+      json.name(ConnectionConsts.TO)
+          .value(portReference(sch, helper, conn.getTo()));
+      json.endObject();
+    }
+    json.endObject();
+
+    json.endObject();
+    json.flush();
+  }
+
+  private void writeTypeAttributes(JsonWriter json, TypeNames names,
+      Map<String, TypeValue> attributes) throws IOException {
+    json.name(GlobalConsts.ATTRIBUTES).beginObject();
+    for (Entry<String, TypeValue> attr : attributes.entrySet()) {
+      json.name(attr.getKey()).value(names.of(attr.getValue()));
+    }
+    json.endObject();
+  }
+
+  private void writeValue(JsonWriter json, Value value) throws IOException {
+    if (value instanceof BooleanValue) {
+      json.value(((BooleanValue) value).toBoolean());
+    } else if (value instanceof IntegerValue) {
+      json.value(((IntegerValue) value).toInteger());
+    } else if (value instanceof StringValue) {
+      json.value(value.toString());
+    } else {
+      throw new UndefinedBehaviourError(
+          "cannot serialize attribute value " + value.toString());
+    }
+  }
+
+  // "nodeName:portName", as read back by SchematicDeserializer
+  private String portReference(Schematic sch, SerializationHelper helper,
+      PortValue port) {
+    String portName = helper.getPortName(port);
+    return sch.getNodeName(port.getParent()) + GlobalConsts.NODE_PORT_DELIM
+        + portName;
   }
+
+  // The name each type is defined under in the schematic.
+  private static class TypeNames {
+    private final Map<TypeValue, String> names = new IdentityHashMap<>();
+
+    public TypeNames(Schematic sch) {
+      addAll(sch.getUserDefinedTypes());
+      addAll(sch.getPortTypes());
+      addAll(sch.getNodeTypes());
+      addAll(sch.getConnectionTypes());
+      addAll(sch.getConstraintTypes());
+    }
+
+    private void addAll(Map<String, ? extends TypeValue> types) {
+      for (Entry<String, ? extends TypeValue> entry : types.entrySet()) {
+        names.put(entry.getValue(), entry.getKey());
+      }
+    }
+
+    public String of(TypeValue type) {
+      String name = names.get(type);
+      if (name == null) {
+        throw new IllegalArgumentException(
+            "type " + type.toString() + " is not defined in the schematic");
+      }
+      return name;
+    }
+  }
+
 }
@@ -32,4 +32,28 @@ public interface SerializationConsts {
     String FROM = "from";
     String TO = "to";
   }
+
+  // The binary format; see SchematicBinarySerializer.
+  public interface BinaryConsts {
+    // "MFSB"
+    int MAGIC = 0x4d465342;
+    int VERSION = 1;
+
+    // section IDs, as listed in the section directory
+    int SECTION_STRINGS = 1;
+    int SECTION_TYPES = 2;
+    int SECTION_NODES = 3;
+    int SECTION_CONNECTIONS = 4;
+
+    // bytes in the fixed-size header: magic, version, section count
+    int HEADER_SIZE = 12;
+    // bytes in one section directory entry: ID, offset, length
+    int DIRECTORY_ENTRY_SIZE = 20;
+
+    // tags of attribute values
+    int VALUE_FALSE = 0;
+    int VALUE_TRUE = 1;
+    int VALUE_INTEGER = 2;
+    int VALUE_STRING = 3;
+  }
 }
@@ -0,0 +1,66 @@
+package org.manifold.compiler.middle.serialization;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.manifold.compiler.ConnectionValue;
+import org.manifold.compiler.NodeValue;
+import org.manifold.compiler.PortValue;
+import org.manifold.compiler.UndeclaredAttributeException;
+import org.manifold.compiler.UndefinedBehaviourError;
+import org.manifold.compiler.Value;
+import org.manifold.compiler.middle.Schematic;
+
+// Lookups shared by SchematicSerializer and SchematicBinarySerializer.
+final class SerializationHelper {
+
+  // The name of every port of every node in the schematic, so that a
+  // connection end is found without scanning the ports of its node.
+  private final Map<PortValue, String> portNames = new IdentityHashMap<>();
+
+  public SerializationHelper(Schematic sch) {
+    for (NodeValue node : sch.getNodes().values()) {
+      for (Entry<String, PortValue> port : node.getPorts().entrySet()) {
+        portNames.put(port.getValue(), port.getKey());
+      }
+    }
+  }
+
+  public String getPortName(PortValue port) {
+    String name = portNames.get(port);
+    if (name == null) {
+      throw new IllegalArgumentException(
+          "connection to a node that is not in the schematic");
+    }
+    return name;
+  }
+
+  // Attributes were checked against the type when the value was created,
+  // so every attribute the type declares must be present.
+
+  public static Value getAttribute(NodeValue node, String attrName) {
+    try {
+      return node.getAttribute(attrName);
+    } catch (UndeclaredAttributeException e) {
+      throw new UndefinedBehaviourError(e.getMessage());
+    }
+  }
+
+  public static Value getAttribute(PortValue port, String attrName) {
+    try {
+      return port.getAttribute(attrName);
+    } catch (UndeclaredAttributeException e) {
+      throw new UndefinedBehaviourError(e.getMessage());
+    }
+  }
+
+  public static Value getAttribute(ConnectionValue conn, String attrName) {
+    try {
+      return conn.getAttribute(attrName);
+    } catch (UndeclaredAttributeException e) {
+      throw new UndefinedBehaviourError(e.getMessage());
+    }
+  }
+
+}
@@ -0,0 +1,107 @@
+package org.manifold.compiler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.google.common.collect.ImmutableMap;
+
+import org.junit.Test;
+import org.manifold.compiler.middle.SchematicException;
+
+public class TestAttributes {
+
+  private static AttributeSchema twoAttributes() {
+    Map<String, TypeValue> types = new LinkedHashMap<>();
+    types.put("width", IntegerTypeValue.getInstance());
+    types.put("flag", BooleanTypeValue.getInstance());
+    return AttributeSchema.of(types);
+  }
+
+  @Test
+  public void testSchemaSlots() {
+    AttributeSchema schema = twoAttributes();
+    assertEquals(2, schema.size());
+    assertEquals(0, schema.getSlot("width"));
+    assertEquals(1, schema.getSlot("flag"));
+    assertEquals(-1, schema.getSlot("bogus"));
+    assertEquals("flag", schema.getName(1));
+    assertSame(IntegerTypeValue.getInstance(), schema.getType(0));
+  }
+
+  @Test
+  public void testGet() throws SchematicException {
+    Attributes attrs = Attributes.of(twoAttributes(), ImmutableMap.of(
+        "flag", BooleanValue.getInstance(true),
+        "width", IntegerValue.getInstance(8)));
+    assertEquals(IntegerValue.getInstance(8), attrs.get("width"));
+    assertEquals(BooleanValue.getInstance(true), attrs.get("flag"));
+  }
+
+  @Test(expected = UndeclaredAttributeException.class)
+  public void testGetUndeclared() throws SchematicException {
+    Attributes attrs = Attributes.of(twoAttributes(), ImmutableMap.of(
+        "flag", BooleanValue.getInstance(true),
+        "width", IntegerValue.getInstance(8)));
+    attrs.get("bogus");
+  }
+
+  @Test
+  public void testEmptyAttributesAreShared() throws SchematicException {
+    AttributeSchema schema =
+        AttributeSchema.of(ImmutableMap.<String, TypeValue>of());
+    assertSame(schema,
+        AttributeSchema.of(new LinkedHashMap<String, TypeValue>()));
+    assertSame(Attributes.of(schema, ImmutableMap.<String, Value>of()),
+        Attributes.of(schema, new LinkedHashMap<String, Value>()));
+  }
+
+  @Test(expected = InvalidAttributeException.class)
+  public void testExtraAttribute() throws SchematicException {
+    Attributes.of(twoAttributes(), ImmutableMap.of(
+        "flag", BooleanValue.getInstance(true),
+        "width", IntegerValue.getInstance(8),
+        "bogus", IntegerValue.getInstance(1)));
+  }
+
+  @Test(expected = UndeclaredAttributeException.class)
+  public void testMissingAttributeBeforeTypeMismatch()
+      throws SchematicException {
+    // width has the wrong type, but flag is missing altogether
+    Attributes.of(twoAttributes(), ImmutableMap.<String, Value>of(
+        "width", BooleanValue.getInstance(false)));
+  }
+
+  @Test(expected = TypeMismatchException.class)
+  public void testTypeMismatch() throws SchematicException {
+    Attributes.of(twoAttributes(), ImmutableMap.<String, Value>of(
+        "flag", IntegerValue.getInstance(1),
+        "width", IntegerValue.getInstance(8)));
+  }
+
+  @Test
+  public void testDeferred() throws SchematicException {
+    final AttributeSchema schema = twoAttributes();
+    final int[] reads = {0};
+    Attributes attrs = Attributes.deferred(schema, new Attributes.Source() {
+      @Override
+      public Attributes read() {
+        reads[0] += 1;
+        try {
+          return Attributes.of(schema, ImmutableMap.of(
+              "flag", BooleanValue.getInstance(true),
+              "width", IntegerValue.getInstance(8)));
+        } catch (SchematicException e) {
+          throw new AssertionError(e);
+        }
+      }
+    });
+    assertEquals(0, reads[0]);
+    assertEquals(IntegerValue.getInstance(8), attrs.get("width"));
+    assertEquals(BooleanValue.getInstance(true), attrs.get("flag"));
+    assertEquals(1, reads[0]);
+  }
+
+}
@@ -0,0 +1,31 @@
+package org.manifold.compiler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+public class TestIntegerValue {
+
+  @Test
+  public void testGetInstance() {
+    assertEquals(42, IntegerValue.getInstance(42).toInteger());
+    assertEquals(-7, IntegerValue.getInstance(-7).toInteger());
+    assertEquals(1 << 20, IntegerValue.getInstance(1 << 20).toInteger());
+    assertEquals(IntegerTypeValue.getInstance(),
+        IntegerValue.getInstance(3).getType());
+  }
+
+  @Test
+  public void testSmallValuesAreShared() {
+    assertSame(IntegerValue.getInstance(0), IntegerValue.getInstance(0));
+    assertSame(IntegerValue.getInstance(-128),
+        IntegerValue.getInstance(-128));
+    assertSame(IntegerValue.getInstance(1023),
+        IntegerValue.getInstance(1023));
+    assertNotSame(IntegerValue.getInstance(1 << 20),
+        IntegerValue.getInstance(1 << 20));
+  }
+
+}
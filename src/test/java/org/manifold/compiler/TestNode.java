@@ -1,7 +1,11 @@
 package org.manifold.compiler;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -105,4 +109,87 @@ public class TestNode {
     NodeValue n = new NodeValue(withPortAttrs, ImmutableMap.of(), portAttrMap);
     assertEquals(v, n.getPort(PORT_NAME).getAttribute(PORT_ATTR_KEY));
   }
+
+  @Test
+  public void testPortsOfType() {
+    PortTypeValue inType = new PortTypeValue(new HashMap<>());
+    PortTypeValue outType = new PortTypeValue(new HashMap<>());
+    NodeTypeValue gate = new NodeTypeValue(new HashMap<>(), ImmutableMap.of(
+        "in0", inType, "out", outType, "in1", inType));
+    assertEquals(2, gate.getNumberOfPortsOfType(inType));
+    assertEquals(1, gate.getNumberOfPortsOfType(outType));
+    assertEquals(0, gate.getNumberOfPortsOfType(defaultPortDefinition));
+    // ports come back in declaration order
+    assertEquals("in0", gate.getNthPortOfType(inType, 0));
+    assertEquals("in1", gate.getNthPortOfType(inType, 1));
+    assertEquals("out", gate.getNthPortOfType(outType, 0));
+  }
+
+  @Test(expected = ArrayIndexOutOfBoundsException.class)
+  public void testNthPortOfType_outOfRange() {
+    hasNoAttrs.getNthPortOfType(defaultPortDefinition, 1);
+  }
+
+  @Test
+  public void testCreateWithSharedAttributes() throws SchematicException {
+    Attributes attrs = Attributes.of(hasABCNodeAttr.getAttributeSchema(),
+        ImmutableMap.of("abc", BooleanValue.getInstance(true)));
+    Attributes portAttrs = Attributes.of(
+        defaultPortDefinition.getAttributeSchema(),
+        ImmutableMap.<String, Value>of());
+    Map<String, Attributes> portAttrMap =
+        ImmutableMap.of(PORT_NAME, portAttrs);
+    NodeValue a = new NodeValue(hasABCNodeAttr, attrs, portAttrMap);
+    NodeValue b = new NodeValue(hasABCNodeAttr, attrs, portAttrMap);
+    assertSame(a.getAttribute("abc"), b.getAttribute("abc"));
+    assertSame(a, a.getPort(PORT_NAME).getParent());
+    assertSame(b, b.getPort(PORT_NAME).getParent());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testCreateWithAttributesOfOtherType()
+      throws SchematicException {
+    Attributes attrs = Attributes.of(hasABCNodeAttr.getAttributeSchema(),
+        ImmutableMap.of("abc", BooleanValue.getInstance(true)));
+    Attributes portAttrs = Attributes.of(
+        defaultPortDefinition.getAttributeSchema(),
+        ImmutableMap.<String, Value>of());
+    new NodeValue(hasNoAttrs, attrs, ImmutableMap.of(PORT_NAME, portAttrs));
+  }
+
+  @Test
+  public void testGetPortsDoesNotCopy() throws SchematicException {
+    NodeValue n = new NodeValue(hasNoAttrs, new HashMap<>(), PORT_ATTRS);
+    // every view hands out the node's own ports
+    assertSame(n.getPort(PORT_NAME), n.getPorts().get(PORT_NAME));
+    assertEquals(n.getPorts(), n.getPorts());
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void testGetPortsIsReadOnly() throws SchematicException {
+    NodeValue n = new NodeValue(hasNoAttrs, new HashMap<>(), PORT_ATTRS);
+    n.getPorts().remove(PORT_NAME);
+  }
+
+  @Test
+  public void testPortLayout() throws SchematicException {
+    PortTypeValue inType = new PortTypeValue(new HashMap<>());
+    PortTypeValue outType = new PortTypeValue(new HashMap<>());
+    NodeTypeValue gate = new NodeTypeValue(new HashMap<>(), ImmutableMap.of(
+        "in0", inType, "out", outType, "in1", inType));
+    assertEquals(3, gate.getPortCount());
+    assertEquals(1, gate.getPortIndex("out"));
+    assertEquals(-1, gate.getPortIndex("bogus"));
+    assertEquals("in1", gate.getPortName(2));
+    assertSame(outType, gate.getPortType(1));
+
+    Map<String, Value> noAttrs = ImmutableMap.of();
+    NodeValue n = new NodeValue(gate, noAttrs, ImmutableMap.of(
+        "in1", noAttrs, "in0", noAttrs, "out", noAttrs));
+    assertEquals(Arrays.asList("in0", "out", "in1"),
+        new ArrayList<>(n.getPorts().keySet()));
+    assertSame(n.getPort("out"), n.getPorts().get("out"));
+    assertSame(n, n.getPort("in1").getParent());
+    assertNull(n.getPorts().get("bogus"));
+  }
 }
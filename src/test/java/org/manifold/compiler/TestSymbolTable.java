@@ -0,0 +1,99 @@
+package org.manifold.compiler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class TestSymbolTable {
+
+  @Test
+  public void testIntern() {
+    SymbolTable symbols = new SymbolTable();
+    int a = symbols.intern("a");
+    int b = symbols.intern("b");
+    assertEquals(0, a);
+    assertEquals(1, b);
+    assertEquals(a, symbols.intern(new String("a")));
+    assertEquals("b", symbols.getName(b));
+    assertEquals(2, symbols.size());
+  }
+
+  @Test
+  public void testLookup() {
+    SymbolTable symbols = new SymbolTable();
+    assertEquals(-1, symbols.lookup("x"));
+    int x = symbols.intern("x");
+    assertEquals(x, symbols.lookup("x"));
+    assertEquals(1, symbols.size());
+  }
+
+  @Test
+  public void testInternRegion() {
+    SymbolTable symbols = new SymbolTable();
+    int node = symbols.intern("and0");
+    assertEquals(node, symbols.intern("and0:in1", 0, 4));
+    int port = symbols.intern("and0:in1", 5, 8);
+    assertEquals("in1", symbols.getName(port));
+    assertNotEquals(node, port);
+    assertEquals(symbols.intern(""), symbols.intern("and0", 2, 2));
+  }
+
+  @Test
+  public void testCanonical() {
+    SymbolTable symbols = new SymbolTable();
+    String first = symbols.canonical(new String("net"));
+    assertSame(first, symbols.canonical(new String("net")));
+    assertSame(first, symbols.canonical("n_net", 2, 5));
+  }
+
+  @Test
+  public void testGrowth() {
+    SymbolTable symbols = new SymbolTable();
+    for (int i = 0; i < 10000; ++i) {
+      assertEquals(i, symbols.intern("s" + i));
+    }
+    for (int i = 0; i < 10000; ++i) {
+      assertEquals(i, symbols.lookup("s" + i));
+      assertEquals("s" + i, symbols.getName(i));
+    }
+  }
+
+  @Test
+  public void testConcurrentIntern() throws InterruptedException {
+    final SymbolTable symbols = new SymbolTable();
+    final int nNames = 5000;
+    final int[][] seen = new int[4][nNames];
+    List<Thread> threads = new ArrayList<>();
+    for (int t = 0; t < seen.length; ++t) {
+      final int[] mine = seen[t];
+      threads.add(new Thread() {
+        @Override
+        public void run() {
+          for (int i = 0; i < nNames; ++i) {
+            mine[i] = symbols.intern("name" + i);
+          }
+        }
+      });
+    }
+    for (Thread thread : threads) {
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    // every thread got the same symbol for each name
+    assertEquals(nNames, symbols.size());
+    for (int i = 0; i < nNames; ++i) {
+      for (int t = 1; t < seen.length; ++t) {
+        assertEquals(seen[0][i], seen[t][i]);
+      }
+      assertEquals("name" + i, symbols.getName(seen[0][i]));
+    }
+  }
+
+}
@@ -27,6 +27,26 @@ public class TestTypeValue {
     public void accept(ValueVisitor visitor) {}
   }
 
+  // A type that names its own supertype, for building deeper hierarchies.
+  private static class DerivedTypeValue extends TypeValue {
+    private final TypeValue supertype;
+
+    public DerivedTypeValue(TypeValue supertype) {
+      this.supertype = supertype;
+    }
+
+    @Override
+    public TypeValue getSupertype() {
+      return supertype;
+    }
+
+    @Override
+    public void verify() {}
+
+    @Override
+    public void accept(ValueVisitor visitor) {}
+  }
+
   private TypeValue getInstance() {
     // TypeValue is abstract so we use a simple implementation.
     return BooleanTypeValue.getInstance();
@@ -59,6 +79,25 @@ public class TestTypeValue {
         FacadeTypeValue.getInstance()));
   }
 
+  @Test
+  public void isSubtypeOf_hierarchy() {
+    TypeValue base = new DerivedTypeValue(BooleanTypeValue.getInstance());
+    TypeValue left = new DerivedTypeValue(base);
+    TypeValue right = new DerivedTypeValue(base);
+    TypeValue leaf = new DerivedTypeValue(left);
+
+    assertTrue(leaf.isSubtypeOf(left));
+    assertTrue(leaf.isSubtypeOf(base));
+    assertTrue(leaf.isSubtypeOf(BooleanTypeValue.getInstance()));
+    assertTrue(leaf.isSubtypeOf(TypeTypeValue.getInstance()));
+    assertFalse(leaf.isSubtypeOf(right));
+    assertFalse(left.isSubtypeOf(right));
+    assertFalse(base.isSubtypeOf(leaf));
+    assertFalse(leaf.isSubtypeOf(IntegerTypeValue.getInstance()));
+    assertFalse(leaf.isSubtypeOf(null));
+    assertFalse(TypeTypeValue.getInstance().isSubtypeOf(base));
+  }
+
   @Test
   public void testIsCompiletimeEvaluable() {
     assertTrue(getInstance().isElaborationtimeKnowable());
@@ -0,0 +1,91 @@
+package org.manifold.compiler.back;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.manifold.compiler.back.digital.ConcurrentDisjointSet;
+import org.manifold.compiler.back.digital.DisjointSet;
+
+public class TestConcurrentDisjointSet {
+
+  @Test
+  public void testUnion() {
+    ConcurrentDisjointSet sets = new ConcurrentDisjointSet(4);
+    assertEquals(4, sets.size());
+    assertTrue(sets.union(2, 3));
+    assertEquals(sets.find(2), sets.find(3));
+    assertNotEquals(sets.find(0), sets.find(2));
+    assertFalse(sets.union(3, 2));
+  }
+
+  @Test
+  public void testRootIsSmallestElement() {
+    ConcurrentDisjointSet sets = new ConcurrentDisjointSet(8);
+    sets.union(7, 5);
+    sets.union(5, 6);
+    sets.union(6, 3);
+    for (int i : new int[] {3, 5, 6, 7}) {
+      assertEquals(3, sets.find(i));
+    }
+    assertEquals(4, sets.find(4));
+  }
+
+  @Test
+  public void testConcurrentUnionsMatchSerial() throws InterruptedException {
+    final int n = 100000;
+    final int nThreads = 4;
+    // every thread unions its own interleaved slice of the same pairs
+    final int[] a = new int[n];
+    final int[] b = new int[n];
+    Random rng = new Random(7);
+    for (int i = 0; i < n; ++i) {
+      a[i] = rng.nextInt(n);
+      b[i] = rng.nextInt(n);
+    }
+    final ConcurrentDisjointSet concurrent = new ConcurrentDisjointSet(n);
+    List<Thread> threads = new ArrayList<>();
+    for (int t = 0; t < nThreads; ++t) {
+      final int offset = t;
+      Thread thread = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          for (int i = offset; i < n; i += nThreads) {
+            concurrent.union(a[i], b[i]);
+          }
+        }
+      });
+      threads.add(thread);
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    DisjointSet serial = new DisjointSet(n);
+    for (int i = 0; i < n; ++i) {
+      serial.union(a[i], b[i]);
+    }
+    // same partition: two elements share a set in one iff they do in the other
+    int[] firstInSerialSet = new int[n];
+    Arrays.fill(firstInSerialSet, -1);
+    for (int i = 0; i < n; ++i) {
+      int root = serial.find(i);
+      if (firstInSerialSet[root] == -1) {
+        firstInSerialSet[root] = i;
+        // the first element seen in a set is its smallest element
+        assertEquals(i, concurrent.find(i));
+      } else {
+        assertEquals(firstInSerialSet[root], concurrent.find(i));
+      }
+    }
+  }
+
+}
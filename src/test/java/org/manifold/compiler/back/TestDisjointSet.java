@@ -0,0 +1,61 @@
+package org.manifold.compiler.back;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.manifold.compiler.back.digital.DisjointSet;
+
+public class TestDisjointSet {
+
+  @Test
+  public void testInitiallyDisjoint() {
+    DisjointSet sets = new DisjointSet(4);
+    assertEquals(4, sets.size());
+    for (int i = 0; i < 4; ++i) {
+      assertEquals(i, sets.find(i));
+    }
+  }
+
+  @Test
+  public void testUnion() {
+    DisjointSet sets = new DisjointSet(4);
+    assertTrue(sets.union(0, 1));
+    assertEquals(sets.find(0), sets.find(1));
+    assertNotEquals(sets.find(0), sets.find(2));
+    // already in the same set
+    assertFalse(sets.union(1, 0));
+  }
+
+  @Test
+  public void testUnionIsTransitive() {
+    DisjointSet sets = new DisjointSet(6);
+    sets.union(0, 1);
+    sets.union(2, 3);
+    sets.union(4, 5);
+    sets.union(1, 3);
+    assertEquals(sets.find(0), sets.find(2));
+    assertEquals(sets.find(1), sets.find(3));
+    assertNotEquals(sets.find(0), sets.find(4));
+    sets.union(5, 0);
+    for (int i = 1; i < 6; ++i) {
+      assertEquals(sets.find(0), sets.find(i));
+    }
+  }
+
+  @Test
+  public void testLongChain() {
+    int n = 100000;
+    DisjointSet sets = new DisjointSet(n);
+    for (int i = 1; i < n; ++i) {
+      sets.union(i - 1, i);
+    }
+    int root = sets.find(0);
+    for (int i = 0; i < n; ++i) {
+      assertEquals(root, sets.find(i));
+    }
+  }
+
+}
@@ -0,0 +1,143 @@
+package org.manifold.compiler.back;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.manifold.compiler.ConnectionValue;
+import org.manifold.compiler.NodeValue;
+import org.manifold.compiler.UndeclaredIdentifierException;
+import org.manifold.compiler.middle.FrozenSchematic;
+import org.manifold.compiler.middle.Schematic;
+import org.manifold.compiler.middle.SchematicException;
+
+public class TestFrozenSchematic {
+
+  private Schematic schematic;
+  private NodeValue in0, in1, and0, out0;
+  private ConnectionValue c0, c1, c2;
+
+  @Before
+  public void setup() throws SchematicException {
+    UtilSchematicConstruction.setupIntermediateTypes();
+    schematic = UtilSchematicConstruction.instantiateSchematic("test");
+    in0 = UtilSchematicConstruction.instantiateInputPin();
+    in1 = UtilSchematicConstruction.instantiateInputPin();
+    and0 = UtilSchematicConstruction.instantiateAnd();
+    out0 = UtilSchematicConstruction.instantiateOutputPin();
+    // added out of name order on purpose
+    schematic.addNode("out0", out0);
+    schematic.addNode("in1", in1);
+    schematic.addNode("and0", and0);
+    schematic.addNode("in0", in0);
+    c0 = UtilSchematicConstruction.instantiateWire(
+        in0.getPort("out"), and0.getPort("in0"));
+    c1 = UtilSchematicConstruction.instantiateWire(
+        in1.getPort("out"), and0.getPort("in1"));
+    c2 = UtilSchematicConstruction.instantiateWire(
+        and0.getPort("out"), out0.getPort("in"));
+    schematic.addConnection("c2", c2);
+    schematic.addConnection("c0", c0);
+    schematic.addConnection("c1", c1);
+  }
+
+  @Test
+  public void testNodesNumberedByName() {
+    FrozenSchematic frozen = schematic.freeze();
+    assertEquals(4, frozen.getNumberOfNodes());
+    List<String> names = new ArrayList<>();
+    for (int i = 0; i < frozen.getNumberOfNodes(); ++i) {
+      names.add(frozen.getNodeName(i));
+    }
+    assertEquals(Arrays.asList("and0", "in0", "in1", "out0"), names);
+    assertEquals(names, new ArrayList<>(frozen.getNodes().keySet()));
+    assertSame(and0, frozen.getNode(0));
+    assertSame(out0, frozen.getNode(3));
+  }
+
+  @Test
+  public void testNodeLookup() throws SchematicException {
+    FrozenSchematic frozen = schematic.freeze();
+    assertEquals(2, frozen.getNodeID("in1"));
+    assertEquals(2, frozen.getNodeID(in1));
+    assertEquals(-1, frozen.getNodeID("bogus"));
+    assertSame(in1, frozen.getNode("in1"));
+    assertEquals("in1", frozen.getNodeName(in1));
+    assertSame(in1, frozen.getNodes().get("in1"));
+    assertTrue(frozen.getNodes().containsKey("out0"));
+    assertFalse(frozen.getNodes().containsKey("bogus"));
+  }
+
+  @Test
+  public void testNodeNotInSchematic() throws SchematicException {
+    FrozenSchematic frozen = schematic.freeze();
+    NodeValue stranger = UtilSchematicConstruction.instantiateNot();
+    assertEquals(-1, frozen.getNodeID(stranger));
+    try {
+      frozen.getNodeName(stranger);
+      fail("node is not in the schematic");
+    } catch (NoSuchElementException e) {
+      // expected
+    }
+  }
+
+  @Test(expected = UndeclaredIdentifierException.class)
+  public void testGetNode_nonexistent() throws SchematicException {
+    schematic.freeze().getNode("bogus");
+  }
+
+  @Test
+  public void testConnections() throws SchematicException {
+    FrozenSchematic frozen = schematic.freeze();
+    assertEquals(3, frozen.getNumberOfConnections());
+    assertEquals("c0", frozen.getConnectionName(0));
+    assertSame(c2, frozen.getConnection(2));
+    assertEquals(1, frozen.getConnectionID("c1"));
+    assertEquals(-1, frozen.getConnectionID("c3"));
+    assertSame(c1, frozen.getConnection("c1"));
+    assertSame(c0, frozen.getConnections().get("c0"));
+  }
+
+  @Test
+  public void testTypesAreCopied() throws SchematicException {
+    FrozenSchematic frozen = schematic.freeze();
+    assertSame(schematic.getName(), frozen.getName());
+    assertSame(schematic.getNodeType("and"), frozen.getNodeType("and"));
+    assertSame(schematic.getPortType("digitalIn"),
+        frozen.getPortType("digitalIn"));
+    assertSame(schematic.getConnectionType("digitalWire"),
+        frozen.getConnectionType("digitalWire"));
+    assertSame(schematic.getUserDefinedType("Bool"),
+        frozen.getUserDefinedType("Bool"));
+  }
+
+  @Test
+  public void testFreezeIsSnapshot() throws SchematicException {
+    FrozenSchematic frozen = schematic.freeze();
+    assertSame(frozen, frozen.freeze());
+    schematic.addNode("not0", UtilSchematicConstruction.instantiateNot());
+    assertEquals(5, schematic.getNodes().size());
+    assertEquals(4, frozen.getNodes().size());
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void testAddNodeToFrozen() throws SchematicException {
+    schematic.freeze().addNode("not0",
+        UtilSchematicConstruction.instantiateNot());
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void testModifyFrozenNodes() {
+    schematic.freeze().getNodes().remove("in0");
+  }
+
+}
@@ -1,15 +1,19 @@
 package org.manifold.compiler.back;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
+import java.util.List;
 import java.util.Map;
+import java.util.Random;
 
 import org.junit.BeforeClass;
 import org.junit.Test;
 import org.manifold.compiler.ConnectionValue;
 import org.manifold.compiler.NodeValue;
+import org.manifold.compiler.PortValue;
 import org.manifold.compiler.back.digital.Net;
 import org.manifold.compiler.back.digital.Netlist;
 import org.manifold.compiler.middle.Schematic;
@@ -82,4 +86,228 @@ public class TestNetlist {
     assertEquals(nIn, nOut);
   }
 
+  @Test
+  public void testConnectionMergesExistingNets() throws SchematicException {
+    // [in0] -> [out0]
+    // [in1] -> [out1]
+    // [in0] -> [out1]
+    // the last connection joins two nets that already exist,
+    // so every port must end up on the same net
+    Schematic sch = UtilSchematicConstruction.instantiateSchematic("case1");
+    NodeValue in0 = UtilSchematicConstruction.instantiateInputPin();
+    NodeValue in1 = UtilSchematicConstruction.instantiateInputPin();
+    NodeValue out0 = UtilSchematicConstruction.instantiateOutputPin();
+    NodeValue out1 = UtilSchematicConstruction.instantiateOutputPin();
+    sch.addNode("in0", in0);
+    sch.addNode("in1", in1);
+    sch.addNode("out0", out0);
+    sch.addNode("out1", out1);
+    sch.addConnection("in0_to_out0", UtilSchematicConstruction.instantiateWire(
+        in0.getPort("out"), out0.getPort("in")));
+    sch.addConnection("in1_to_out1", UtilSchematicConstruction.instantiateWire(
+        in1.getPort("out"), out1.getPort("in")));
+    sch.addConnection("in0_to_out1", UtilSchematicConstruction.instantiateWire(
+        in0.getPort("out"), out1.getPort("in")));
+
+    Netlist netlist = new Netlist(sch);
+
+    assertEquals(1, netlist.getNets().size());
+    Net net = netlist.getConnectedNet(in0.getPort("out"));
+    assertEquals(4, net.getConnectedPorts().size());
+    assertEquals(net, netlist.getConnectedNet(in1.getPort("out")));
+    assertEquals(net, netlist.getConnectedNet(out0.getPort("in")));
+    assertEquals(net, netlist.getConnectedNet(out1.getPort("in")));
+  }
+
+  @Test
+  public void testSeparateNets() throws SchematicException {
+    // [in0] -> [out0]
+    // [in1] -> [out1]
+    Schematic sch = UtilSchematicConstruction.instantiateSchematic("case2");
+    NodeValue in0 = UtilSchematicConstruction.instantiateInputPin();
+    NodeValue in1 = UtilSchematicConstruction.instantiateInputPin();
+    NodeValue out0 = UtilSchematicConstruction.instantiateOutputPin();
+    NodeValue out1 = UtilSchematicConstruction.instantiateOutputPin();
+    sch.addNode("in0", in0);
+    sch.addNode("in1", in1);
+    sch.addNode("out0", out0);
+    sch.addNode("out1", out1);
+    sch.addConnection("in0_to_out0", UtilSchematicConstruction.instantiateWire(
+        in0.getPort("out"), out0.getPort("in")));
+    sch.addConnection("in1_to_out1", UtilSchematicConstruction.instantiateWire(
+        in1.getPort("out"), out1.getPort("in")));
+
+    Netlist netlist = new Netlist(sch);
+
+    Map<String, Net> nets = netlist.getNets();
+    assertEquals(2, nets.size());
+    assertTrue(nets.containsKey("n_in0_to_out0"));
+    assertTrue(nets.containsKey("n_in1_to_out1"));
+    assertEquals(nets.get("n_in0_to_out0"),
+        netlist.getConnectedNet(out0.getPort("in")));
+    assertEquals(nets.get("n_in1_to_out1"),
+        netlist.getConnectedNet(out1.getPort("in")));
+  }
+
+  @Test
+  public void testCompactRepresentation() throws SchematicException {
+    // [in0] -+-> [out0]
+    //        +-> [out1]
+    // [in1] ---> [out2]
+    Schematic sch = UtilSchematicConstruction.instantiateSchematic("case3");
+    NodeValue in0 = UtilSchematicConstruction.instantiateInputPin();
+    NodeValue in1 = UtilSchematicConstruction.instantiateInputPin();
+    NodeValue out0 = UtilSchematicConstruction.instantiateOutputPin();
+    NodeValue out1 = UtilSchematicConstruction.instantiateOutputPin();
+    NodeValue out2 = UtilSchematicConstruction.instantiateOutputPin();
+    sch.addNode("in0", in0);
+    sch.addNode("in1", in1);
+    sch.addNode("out0", out0);
+    sch.addNode("out1", out1);
+    sch.addNode("out2", out2);
+    sch.addConnection("in0_to_out0", UtilSchematicConstruction.instantiateWire(
+        in0.getPort("out"), out0.getPort("in")));
+    sch.addConnection("in0_to_out1", UtilSchematicConstruction.instantiateWire(
+        in0.getPort("out"), out1.getPort("in")));
+    sch.addConnection("in1_to_out2", UtilSchematicConstruction.instantiateWire(
+        in1.getPort("out"), out2.getPort("in")));
+
+    Netlist netlist = new Netlist(sch);
+
+    assertEquals(5, netlist.getNumberOfPorts());
+    assertEquals(2, netlist.getNumberOfNets());
+    int totalMembers = 0;
+    for (int n = 0; n < netlist.getNumberOfNets(); ++n) {
+      Net net = netlist.getNet(n);
+      assertEquals(net.getConnectedPorts().size(), netlist.getNetSize(n));
+      for (int i = 0; i < netlist.getNetSize(n); ++i) {
+        int portID = netlist.getNetMember(n, i);
+        assertEquals(n, netlist.getNetID(portID));
+        PortValue port = netlist.getPort(portID);
+        assertEquals(portID, netlist.getPortID(port));
+        assertTrue(net.getConnectedPorts().contains(port));
+        assertEquals(net, netlist.getConnectedNet(port));
+      }
+      totalMembers += netlist.getNetSize(n);
+    }
+    assertEquals(netlist.getNumberOfPorts(), totalMembers);
+    assertEquals(3, netlist.getConnectedNet(in0.getPort("out"))
+        .getConnectedPorts().size());
+  }
+
+  @Test
+  public void testUnconnectedPort() throws SchematicException {
+    Schematic sch = UtilSchematicConstruction.instantiateSchematic("case4");
+    NodeValue in = UtilSchematicConstruction.instantiateInputPin();
+    NodeValue out = UtilSchematicConstruction.instantiateOutputPin();
+    NodeValue dangling = UtilSchematicConstruction.instantiateOutputPin();
+    sch.addNode("in", in);
+    sch.addNode("out", out);
+    sch.addNode("dangling", dangling);
+    sch.addConnection("in_to_out", UtilSchematicConstruction.instantiateWire(
+        in.getPort("out"), out.getPort("in")));
+
+    Netlist netlist = new Netlist(sch);
+
+    assertEquals(-1, netlist.getPortID(dangling.getPort("in")));
+    for (Net net : netlist.getNets().values()) {
+      assertFalse(net.getConnectedPorts().contains(dangling.getPort("in")));
+    }
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void testNetsAreReadOnly() throws SchematicException {
+    Schematic sch = UtilSchematicConstruction.instantiateSchematic("case0");
+    NodeValue in = UtilSchematicConstruction.instantiateInputPin();
+    NodeValue out = UtilSchematicConstruction.instantiateOutputPin();
+    sch.addNode("in", in);
+    sch.addNode("out", out);
+    sch.addConnection("in_to_out", UtilSchematicConstruction.instantiateWire(
+        in.getPort("out"), out.getPort("in")));
+
+    Netlist netlist = new Netlist(sch);
+    netlist.getConnectedNet(in.getPort("out")).getConnectedPorts().clear();
+  }
+
+  @Test
+  public void testDriversAndSinks() throws SchematicException {
+    // [in0] -+-> [out0]
+    //        +-> [out1]
+    // [in1] -+
+    Schematic sch = UtilSchematicConstruction.instantiateSchematic("case5");
+    NodeValue in0 = UtilSchematicConstruction.instantiateInputPin();
+    NodeValue in1 = UtilSchematicConstruction.instantiateInputPin();
+    NodeValue out0 = UtilSchematicConstruction.instantiateOutputPin();
+    NodeValue out1 = UtilSchematicConstruction.instantiateOutputPin();
+    sch.addNode("in0", in0);
+    sch.addNode("in1", in1);
+    sch.addNode("out0", out0);
+    sch.addNode("out1", out1);
+    sch.addConnection("in0_to_out0", UtilSchematicConstruction.instantiateWire(
+        in0.getPort("out"), out0.getPort("in")));
+    sch.addConnection("in0_to_out1", UtilSchematicConstruction.instantiateWire(
+        in0.getPort("out"), out1.getPort("in")));
+    sch.addConnection("in1_to_out1", UtilSchematicConstruction.instantiateWire(
+        in1.getPort("out"), out1.getPort("in")));
+
+    Netlist netlist = new Netlist(sch);
+    Net net = netlist.getConnectedNet(in0.getPort("out"));
+
+    assertEquals(2, netlist.getNumberOfDrivers(net));
+    PortValue driver = netlist.getDriver(net);
+    assertTrue(driver == in0.getPort("out") || driver == in1.getPort("out"));
+    List<PortValue> sinks = netlist.getSinks(net);
+    assertEquals(2, sinks.size());
+    assertTrue(sinks.contains(out0.getPort("in")));
+    assertTrue(sinks.contains(out1.getPort("in")));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testDriverOfForeignNet() throws SchematicException {
+    Schematic sch = UtilSchematicConstruction.instantiateSchematic("case0");
+    Netlist netlist = new Netlist(sch);
+    netlist.getDriver(new Net("foreign"));
+  }
+
+  @Test
+  public void testParallelBuildMatchesSerial() throws SchematicException {
+    // enough random connections that the parallel build actually splits
+    // its work, and enough merging that nets get large
+    Schematic sch = UtilSchematicConstruction.instantiateSchematic("case6");
+    int nGates = 5000;
+    NodeValue[] gates = new NodeValue[nGates];
+    for (int i = 0; i < nGates; ++i) {
+      gates[i] = UtilSchematicConstruction.instantiateAnd();
+      sch.addNode("and" + i, gates[i]);
+    }
+    Random rng = new Random(42);
+    for (int i = 0; i < 20000; ++i) {
+      NodeValue from = gates[rng.nextInt(nGates)];
+      NodeValue to = gates[rng.nextInt(nGates)];
+      String toPort = rng.nextBoolean() ? "in0" : "in1";
+      sch.addConnection("c" + i, UtilSchematicConstruction.instantiateWire(
+          from.getPort("out"), to.getPort(toPort)));
+    }
+
+    Netlist serial = new Netlist(sch, false);
+    Netlist parallel = new Netlist(sch, true);
+
+    assertEquals(serial.getNumberOfPorts(), parallel.getNumberOfPorts());
+    assertEquals(serial.getNumberOfNets(), parallel.getNumberOfNets());
+    assertEquals(serial.getNets().keySet(), parallel.getNets().keySet());
+    for (int n = 0; n < serial.getNumberOfNets(); ++n) {
+      Net serialNet = serial.getNet(n);
+      Net parallelNet = parallel.getNet(n);
+      assertEquals(serialNet.getName(), parallelNet.getName());
+      assertEquals(serial.getNetSize(n), parallel.getNetSize(n));
+      for (int i = 0; i < serial.getNetSize(n); ++i) {
+        assertEquals(serial.getNetMember(n, i), parallel.getNetMember(n, i));
+      }
+      assertEquals(serial.getNumberOfDrivers(serialNet),
+          parallel.getNumberOfDrivers(parallelNet));
+      assertEquals(serial.getDriver(serialNet),
+          parallel.getDriver(parallelNet));
+    }
+  }
+
 }
@@ -0,0 +1,65 @@
+package org.manifold.compiler.back;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.manifold.compiler.NodeValue;
+import org.manifold.compiler.PortValue;
+import org.manifold.compiler.back.digital.PortIndex;
+import org.manifold.compiler.middle.SchematicException;
+
+public class TestPortIndex {
+
+  @BeforeClass
+  public static void setupClass() {
+    UtilSchematicConstruction.setupIntermediateTypes();
+  }
+
+  @Test
+  public void testAddAssignsDenseIDs() throws SchematicException {
+    PortIndex index = new PortIndex(0);
+    List<PortValue> ports = new ArrayList<>();
+    // enough ports to force the table to grow several times
+    for (int i = 0; i < 200; ++i) {
+      NodeValue and = UtilSchematicConstruction.instantiateAnd();
+      ports.add(and.getPort("in0"));
+      ports.add(and.getPort("out"));
+    }
+    for (int i = 0; i < ports.size(); ++i) {
+      assertEquals(i, index.add(ports.get(i)));
+    }
+    assertEquals(ports.size(), index.size());
+    for (int i = 0; i < ports.size(); ++i) {
+      assertEquals(i, index.getID(ports.get(i)));
+      assertSame(ports.get(i), index.getPort(i));
+    }
+  }
+
+  @Test
+  public void testAddIsIdempotent() throws SchematicException {
+    PortIndex index = new PortIndex(4);
+    PortValue port = UtilSchematicConstruction.instantiateNot().getPort("in");
+    assertEquals(0, index.add(port));
+    assertEquals(0, index.add(port));
+    assertEquals(1, index.size());
+  }
+
+  @Test
+  public void testMissingPort() throws SchematicException {
+    PortIndex index = new PortIndex(4);
+    PortValue port = UtilSchematicConstruction.instantiateNot().getPort("in");
+    assertEquals(-1, index.getID(port));
+  }
+
+  @Test(expected = IndexOutOfBoundsException.class)
+  public void testGetPortOutOfRange() {
+    PortIndex index = new PortIndex(4);
+    index.getPort(0);
+  }
+
+}
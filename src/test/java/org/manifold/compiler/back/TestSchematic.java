@@ -418,5 +418,39 @@ public class TestSchematic {
     Schematic s = new Schematic("test");
     s.getConstraint("bogus");
   }
-  
+
+  @Test
+  public void testGetNodesIsLiveView() throws SchematicException {
+    Schematic s = new Schematic("test");
+    Map<String, NodeValue> nodes = s.getNodes();
+    assertEquals(0, nodes.size());
+    s.addNode("n1", n);
+    assertEquals(1, nodes.size());
+    assertSame(n, nodes.get("n1"));
+    assertSame(nodes, s.getNodes());
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void testGetNodesIsReadOnly() throws SchematicException {
+    Schematic s = new Schematic("test");
+    s.getNodes().put("n1", n);
+  }
+
+  @Test
+  public void testGetConnectionsIsLiveView() throws SchematicException {
+    Schematic s = new Schematic("test");
+    Map<String, ConnectionValue> connections = s.getConnections();
+    ConnectionValue c = new ConnectionValue(
+        new ConnectionType(new HashMap<>()), p1, p2, new HashMap<>());
+    s.addConnection("c1", c);
+    assertSame(c, connections.get("c1"));
+    assertSame(connections, s.getConnections());
+    try {
+      connections.remove("c1");
+      fail("connections should be read-only");
+    } catch (UnsupportedOperationException e) {
+      assertEquals(1, s.getConnections().size());
+    }
+  }
+
 }
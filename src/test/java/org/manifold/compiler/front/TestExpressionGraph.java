@@ -0,0 +1,212 @@
+package org.manifold.compiler.front;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.manifold.compiler.Main;
+import org.manifold.compiler.TypeValue;
+import org.manifold.compiler.UndefinedBehaviourError;
+import org.manifold.compiler.middle.Schematic;
+
+public class TestExpressionGraph {
+
+  private Scope scope;
+  private Schematic schematic;
+
+  @Before
+  public void setup() throws Exception {
+    scope = new Scope();
+    schematic = new Schematic("test");
+    Main.createDigitalPrimitives(scope, schematic);
+  }
+
+  private VariableReferenceExpression ref(String name) {
+    return new VariableReferenceExpression(
+        new VariableIdentifier(Arrays.asList(name)));
+  }
+
+  // Build the expression `f(args...)`, the way the parser does.
+  private Expression call(String function, Expression... args) {
+    List<TypeValue> types = new ArrayList<>();
+    for (Expression arg : args) {
+      types.add(arg.getType(scope));
+    }
+    TupleValue tuple = new TupleValue(TupleTypeValue.getInstance(types),
+        Arrays.asList(args));
+    return new FunctionInvocationExpression(ref(function),
+        new LiteralExpression(tuple));
+  }
+
+  // Build `name = rvalue;` and define `name` in the top-level scope.
+  private Expression assign(String name, Expression rvalue) throws Exception {
+    VariableIdentifier id = new VariableIdentifier(Arrays.asList(name));
+    if (!scope.isVariableDefined(id)) {
+      scope.defineVariable(id, new LiteralExpression(rvalue.getType(scope)));
+      scope.assignVariable(id, rvalue);
+    }
+    return new VariableAssignmentExpression(ref(name), rvalue);
+  }
+
+  private ExpressionGraph build(Expression... expressions) {
+    ExpressionGraph graph = new ExpressionGraph(scope);
+    graph.buildFrom(Arrays.asList(expressions));
+    graph.removeUnconnectedEdges();
+    return graph;
+  }
+
+  private ExpressionGraph buildEagerly(Expression... expressions) {
+    ExpressionGraph graph = new ExpressionGraph(scope, true);
+    graph.buildFrom(Arrays.asList(expressions));
+    graph.removeUnconnectedEdges();
+    return graph;
+  }
+
+  @Test
+  public void testOptimizeOutVariables() throws Exception {
+    // a = inputPin(); b = a; outputPin(b); outputPin(a);
+    ExpressionGraph graph = build(
+        assign("a", call("inputPin")),
+        assign("b", ref("a")),
+        call("outputPin", ref("b")),
+        call("outputPin", ref("a")));
+    graph.optimizeOutVariables();
+
+    List<String> edges = graph.getPrintableEdges();
+    for (String edge : edges) {
+      assertFalse(edge, edge.contains("var "));
+    }
+    // inputPin fans out through two tuples, one to each outputPin
+    assertEquals(4, edges.size());
+  }
+
+  @Test
+  public void testAdjacencyFollowsRewiring() throws Exception {
+    ExpressionGraph graph = build(
+        assign("a", call("inputPin")),
+        call("outputPin", ref("a")),
+        call("outputPin", ref("a")));
+    graph.optimizeOutVariables();
+    graph.elaboratePrimitives();
+    graph.elaborateConnections(schematic);
+    graph.writeSchematic(schematic);
+
+    assertEquals(3, schematic.getNodes().size());
+    assertEquals(2, schematic.getConnections().size());
+  }
+
+  @Test
+  public void testEdgesFromSourceAndToTarget() {
+    ExpressionVertex source = new VariableReferenceVertex(
+        new VariableIdentifier(Arrays.asList("x")));
+    ExpressionGraph graph = build(call("outputPin", call("inputPin")));
+    assertTrue(graph.getEdgesFromSource(source).isEmpty());
+    assertTrue(graph.getEdgesToTarget(source).isEmpty());
+  }
+
+  @Test(expected = UndefinedBehaviourError.class)
+  public void testMultiplyAssignedVariable() throws Exception {
+    ExpressionGraph graph = build(
+        assign("a", call("inputPin")),
+        assign("a", call("inputPin")),
+        call("outputPin", ref("a")));
+    graph.optimizeOutVariables();
+  }
+
+  @Test(expected = UndefinedBehaviourError.class)
+  public void testUnassignedVariable() throws Exception {
+    ExpressionGraph graph = build(call("outputPin", ref("a")));
+    graph.optimizeOutVariables();
+  }
+
+  @Test
+  public void testEagerResolutionMatchesContraction() throws Exception {
+    Expression[] program = new Expression[] {
+      assign("a", call("inputPin")),
+      assign("b", ref("a")),
+      call("outputPin", ref("b")),
+      call("outputPin", ref("a"))
+    };
+    ExpressionGraph contracted = build(program);
+    contracted.optimizeOutVariables();
+    ExpressionGraph eager = buildEagerly(program);
+
+    List<String> eagerEdges = eager.getPrintableEdges();
+    for (String edge : eagerEdges) {
+      assertFalse(edge, edge.contains("var "));
+    }
+    assertEquals(contracted.getPrintableEdges().size(), eagerEdges.size());
+  }
+
+  @Test
+  public void testEagerForwardReference() throws Exception {
+    // outputPin(b); b = a; a = inputPin();
+    ExpressionGraph graph = buildEagerly(
+        call("outputPin", ref("b")),
+        assign("b", ref("a")),
+        assign("a", call("inputPin")));
+    for (String edge : graph.getPrintableEdges()) {
+      assertFalse(edge, edge.contains("var "));
+    }
+    graph.elaboratePrimitives();
+    graph.elaborateConnections(schematic);
+    graph.writeSchematic(schematic);
+    assertEquals(2, schematic.getNodes().size());
+    assertEquals(1, schematic.getConnections().size());
+  }
+
+  @Test(expected = UndefinedBehaviourError.class)
+  public void testEagerMultiplyAssignedVariable() throws Exception {
+    buildEagerly(
+        assign("a", call("inputPin")),
+        assign("a", call("inputPin")));
+  }
+
+  @Test(expected = UndefinedBehaviourError.class)
+  public void testEagerUnassignedVariable() throws Exception {
+    buildEagerly(call("outputPin", ref("a")));
+  }
+
+  @Test(expected = UndefinedBehaviourError.class)
+  public void testEagerCircularAssignment() throws Exception {
+    buildEagerly(
+        call("outputPin", ref("a")),
+        new VariableAssignmentExpression(ref("a"), ref("b")),
+        new VariableAssignmentExpression(ref("b"), ref("a")));
+  }
+
+  // Builds and elaborates a design with many gates on a fresh schematic.
+  private Schematic elaborateLargeDesign(boolean parallel) throws Exception {
+    setup();
+    List<Expression> program = new ArrayList<>();
+    for (int i = 0; i < 2000; ++i) {
+      program.add(call("outputPin",
+          call("and", call("inputPin"), call("inputPin"))));
+    }
+    ExpressionGraph graph = new ExpressionGraph(scope, true);
+    graph.buildFrom(program);
+    graph.removeUnconnectedEdges();
+    graph.elaboratePrimitives(parallel);
+    graph.elaborateConnections(schematic, parallel);
+    graph.writeSchematic(schematic);
+    return schematic;
+  }
+
+  @Test
+  public void testParallelElaborationMatchesSerial() throws Exception {
+    Schematic serial = elaborateLargeDesign(false);
+    Schematic parallel = elaborateLargeDesign(true);
+    assertEquals(8000, parallel.getNodes().size());
+    assertEquals(6000, parallel.getConnections().size());
+    assertEquals(serial.getNodes().keySet(), parallel.getNodes().keySet());
+    assertEquals(serial.getConnections().keySet(),
+        parallel.getConnections().keySet());
+  }
+
+}
@@ -1,6 +1,7 @@
 package org.manifold.compiler.front;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 
 import org.junit.Test;
 import org.manifold.compiler.BooleanTypeValue;
@@ -27,8 +28,22 @@ public class TestMain {
     Main.createDigitalPrimitives(toplevel, schematic);
     VariableIdentifier varId = new VariableIdentifier(
         ImmutableList.of("inputPin"));
-    TypeValue inputPinType = new FunctionTypeValue(nilType, boolType);
+    TypeValue inputPinType = FunctionTypeValue.getInstance(nilType, boolType);
     assertEquals(inputPinType, toplevel.getVariableType(varId));
   }
 
+  @Test
+  public void testPrimitiveTypesAreShared() throws Exception {
+    Scope toplevel = new Scope();
+    Main.createDigitalPrimitives(toplevel, new Schematic("test"));
+    TypeValue andType = toplevel.getVariableType(
+        new VariableIdentifier(ImmutableList.of("and")));
+    TypeValue orType = toplevel.getVariableType(
+        new VariableIdentifier(ImmutableList.of("or")));
+    assertSame(andType, orType);
+    assertSame(FunctionTypeValue.getInstance(nilType, boolType),
+        toplevel.getVariableType(
+            new VariableIdentifier(ImmutableList.of("inputPin"))));
+  }
+
 }
@@ -0,0 +1,82 @@
+package org.manifold.compiler.front;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+import org.manifold.compiler.BooleanTypeValue;
+
+public class TestNamespaceRegistry {
+
+  @Test
+  public void testDefineAndLookup() {
+    NamespaceRegistry registry = new NamespaceRegistry();
+    Namespace abc = registry.define(new NamespaceIdentifier("a:b:c"));
+    Namespace abd = registry.define(new NamespaceIdentifier("a:b:d"));
+    Namespace x = registry.define(new NamespaceIdentifier("x"));
+
+    assertEquals(3, registry.size());
+    assertEquals(new NamespaceIdentifier("a:b:c"), abc.getAbsoluteName());
+    assertSame(abc, registry.getNamespace(
+        new NamespaceIdentifier(Arrays.asList("a", "b", "c"))));
+    assertSame(abd, registry.getNamespace(new NamespaceIdentifier("a:b:d")));
+    assertSame(x, registry.getNamespace(new NamespaceIdentifier("x")));
+    // intermediate names are not namespaces unless defined
+    assertFalse(registry.isDefined(new NamespaceIdentifier("a:b")));
+    assertNull(registry.getNamespace(new NamespaceIdentifier("a:b:c:d")));
+    assertNull(registry.getNamespace(new NamespaceIdentifier("q")));
+  }
+
+  @Test
+  public void testDefineIsIdempotent() {
+    NamespaceRegistry registry = new NamespaceRegistry();
+    Namespace first = registry.define(new NamespaceIdentifier("whdl:is"));
+    assertSame(first, registry.define(new NamespaceIdentifier("whdl:is")));
+    assertEquals(1, registry.size());
+  }
+
+  @Test
+  public void testRootNamespace() {
+    NamespaceRegistry registry = new NamespaceRegistry();
+    NamespaceIdentifier root =
+        new NamespaceIdentifier(Collections.<String>emptyList());
+    assertFalse(registry.isDefined(root));
+    Namespace ns = registry.define(root);
+    assertSame(ns, registry.getNamespace(root));
+    assertTrue(registry.isDefined(root));
+  }
+
+  @Test
+  public void testQualifiedVariable() throws Exception {
+    NamespaceRegistry registry = new NamespaceRegistry();
+    NamespaceIdentifier name = new NamespaceIdentifier("whdl:is:cool");
+    Namespace ns = registry.define(name);
+    VariableIdentifier foo = new VariableIdentifier(Arrays.asList("foo"));
+    ns.getPublicScope().defineVariable(foo,
+        new LiteralExpression(BooleanTypeValue.getInstance()));
+
+    Variable v = registry.getVariable(new VariableIdentifier(name, "foo"));
+    assertSame(ns.getPublicScope().getVariable(foo), v);
+  }
+
+  @Test(expected = VariableNotDefinedException.class)
+  public void testQualifiedVariableInUnknownNamespace() throws Exception {
+    new NamespaceRegistry().getVariable(
+        new VariableIdentifier(new NamespaceIdentifier("no:such"), "foo"));
+  }
+
+  @Test(expected = VariableNotDefinedException.class)
+  public void testUndefinedQualifiedVariable() throws Exception {
+    NamespaceRegistry registry = new NamespaceRegistry();
+    NamespaceIdentifier name = new NamespaceIdentifier("whdl");
+    registry.define(name);
+    registry.getVariable(new VariableIdentifier(name, "foo"));
+  }
+
+}
@@ -0,0 +1,88 @@
+package org.manifold.compiler.front;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class TestPersistentMap {
+
+  // Keys whose hash codes are chosen by the test, to force collisions.
+  private static class Key {
+    private final String name;
+    private final int hash;
+
+    public Key(String name, int hash) {
+      this.name = name;
+      this.hash = hash;
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof Key && ((Key) o).name.equals(name);
+    }
+  }
+
+  @Test
+  public void testManyKeys() {
+    PersistentMap<Integer, String> map = PersistentMap.empty();
+    for (int i = 0; i < 5000; ++i) {
+      map = map.plus(i, "v" + i);
+    }
+    assertEquals(5000, map.size());
+    for (int i = 0; i < 5000; ++i) {
+      assertEquals("v" + i, map.get(i));
+    }
+    assertNull(map.get(5000));
+    Set<Integer> keys = new HashSet<>(map.keySet());
+    assertEquals(5000, keys.size());
+    assertTrue(map.keySet().contains(4999));
+  }
+
+  @Test
+  public void testOldVersionsAreUnchanged() {
+    PersistentMap<String, String> empty = PersistentMap.empty();
+    PersistentMap<String, String> one = empty.plus("a", "1");
+    PersistentMap<String, String> two = one.plus("b", "2");
+    PersistentMap<String, String> replaced = two.plus("a", "3");
+
+    assertTrue(empty.isEmpty());
+    assertNull(empty.get("a"));
+    assertEquals(1, one.size());
+    assertNull(one.get("b"));
+    assertEquals("1", two.get("a"));
+    assertEquals("3", replaced.get("a"));
+    assertEquals(2, replaced.size());
+    assertSame(two, two.plus("b", "2"));
+  }
+
+  @Test
+  public void testCollidingKeys() {
+    Key a = new Key("a", 42);
+    Key b = new Key("b", 42);
+    Key c = new Key("c", 42);
+    // shares the lowest chunk of the hash with the others
+    Key d = new Key("d", 42 + (1 << 20));
+    PersistentMap<Key, Integer> map = PersistentMap.<Key, Integer>empty()
+        .plus(a, 1).plus(b, 2).plus(d, 4).plus(c, 3).plus(b, 5);
+    assertEquals(4, map.size());
+    assertEquals(Integer.valueOf(1), map.get(a));
+    assertEquals(Integer.valueOf(5), map.get(b));
+    assertEquals(Integer.valueOf(3), map.get(c));
+    assertEquals(Integer.valueOf(4), map.get(d));
+    assertFalse(map.containsKey(new Key("e", 42)));
+    assertEquals(4, map.keySet().size());
+  }
+
+}
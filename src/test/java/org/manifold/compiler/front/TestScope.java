@@ -11,6 +11,7 @@ import com.google.common.collect.ImmutableSet;
 import org.junit.Test;
 import org.manifold.compiler.BooleanTypeValue;
 import org.manifold.compiler.BooleanValue;
+import org.manifold.compiler.Value;
 
 public class TestScope {
 
@@ -162,4 +163,104 @@ public class TestScope {
     s.assignVariable(getVariableIdentifier(), getValueExpression());
   }
 
+  // A literal that counts how often it is evaluated.
+  private static class CountingExpression extends LiteralExpression {
+    private int evaluations = 0;
+
+    public CountingExpression(Value value) {
+      super(value);
+    }
+
+    @Override
+    public Value getValue(Scope scope) {
+      evaluations += 1;
+      return super.getValue(scope);
+    }
+  }
+
+  @Test
+  public void testExpressionValueIsCached() throws Exception {
+    Scope s = new Scope();
+    s.defineVariable(getVariableIdentifier(), getTypeExpression());
+    CountingExpression value =
+        new CountingExpression(BooleanValue.getInstance(true));
+    s.assignVariable(getVariableIdentifier(), value);
+
+    assertEquals(BooleanValue.getInstance(true),
+        s.getVariableValue(getVariableIdentifier()));
+    assertEquals(BooleanValue.getInstance(true),
+        s.getVariableValue(getVariableIdentifier()));
+    assertSame(value.getValue(s), s.getExpressionValue(value));
+    assertEquals(2, value.evaluations);
+  }
+
+  @Test
+  public void testExpressionCacheIsInvalidatedByChanges() throws Exception {
+    Scope parent = new Scope();
+    Scope child = new Scope(parent);
+    CountingExpression value =
+        new CountingExpression(BooleanValue.getInstance(false));
+    child.getExpressionValue(value);
+    child.getExpressionValue(value);
+    assertEquals(1, value.evaluations);
+
+    // a definition in an enclosing scope may change what names refer to
+    parent.defineVariable(getVariableIdentifier(), getTypeExpression());
+    child.getExpressionValue(value);
+    assertEquals(2, value.evaluations);
+
+    parent.assignVariable(getVariableIdentifier(), getValueExpression());
+    child.getExpressionValue(value);
+    child.getExpressionValue(value);
+    assertEquals(3, value.evaluations);
+  }
+
+  @Test
+  public void testSnapshot() throws Exception {
+    Scope parent = new Scope();
+    Scope s = new Scope(parent);
+    s.defineVariable(getVariableIdentifier(), getTypeExpression());
+    Scope copy = s.snapshot();
+    assertSame(parent, copy.getParentScope());
+    assertSame(s.getVariable(getVariableIdentifier()),
+        copy.getVariable(getVariableIdentifier()));
+
+    VariableIdentifier bar = new VariableIdentifier(
+        getNamespaceIdentifier(), "bar");
+    VariableIdentifier baz = new VariableIdentifier(
+        getNamespaceIdentifier(), "baz");
+    s.defineVariable(bar, getTypeExpression());
+    copy.defineVariable(baz, getTypeExpression());
+    assertTrue(s.isVariableDefined(bar));
+    assertFalse(s.isVariableDefined(baz));
+    assertTrue(copy.isVariableDefined(baz));
+    assertFalse(copy.isVariableDefined(bar));
+    assertEquals(ImmutableSet.of(getVariableIdentifier(), baz),
+        copy.getSymbolIdentifiers());
+
+    // references resolved by address see their own scope's variables
+    s.assignVariable(bar, getValueExpression());
+    copy.assignVariable(baz, new LiteralExpression(
+        BooleanValue.getInstance(false)));
+    assertEquals(getValueExpression().getValue(s),
+        new VariableReferenceExpression(bar).getValue(s));
+    assertEquals(BooleanValue.getInstance(false),
+        new VariableReferenceExpression(baz).getValue(copy));
+  }
+
+  @Test
+  public void testSnapshotOfRootSeesAssignments() throws Exception {
+    Scope s = new Scope();
+    s.defineVariable(getVariableIdentifier(), getTypeExpression());
+    Scope copy = s.snapshot();
+    VariableReferenceExpression ref =
+        new VariableReferenceExpression(getVariableIdentifier());
+    assertEquals(null, copy.getExpressionValue(ref));
+
+    // the variable belongs to the original; the copy's cache must still go
+    copy.assignVariable(getVariableIdentifier(), getValueExpression());
+    assertEquals(BooleanValue.getInstance(true),
+        copy.getExpressionValue(ref));
+  }
+
 }
@@ -0,0 +1,72 @@
+package org.manifold.compiler.front;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.manifold.compiler.BooleanTypeValue;
+import org.manifold.compiler.IntegerTypeValue;
+import org.manifold.compiler.TypeTypeValue;
+import org.manifold.compiler.TypeValue;
+
+public class TestTupleTypeValue {
+  private static final TypeValue boolType = BooleanTypeValue.getInstance();
+  private static final TypeValue intType = IntegerTypeValue.getInstance();
+
+  private static TupleTypeValue tuple(TypeValue... types) {
+    return TupleTypeValue.getInstance(Arrays.asList(types));
+  }
+
+  @Test
+  public void testEqualTuplesAreShared() {
+    List<TypeValue> types = new ArrayList<>();
+    types.add(boolType);
+    types.add(intType);
+    TupleTypeValue t = TupleTypeValue.getInstance(types);
+    assertSame(t, tuple(boolType, intType));
+    assertEquals(t.hashCode(), tuple(boolType, intType).hashCode());
+    assertNotSame(t, tuple(intType, boolType));
+    assertNotSame(t, tuple(boolType, intType, boolType));
+    // later changes to the list do not affect the type
+    types.set(0, intType);
+    assertSame(boolType, t.entry(0));
+  }
+
+  @Test
+  public void testNestedTuplesAreShared() {
+    assertSame(tuple(tuple(boolType), intType),
+        tuple(tuple(boolType), intType));
+  }
+
+  @Test
+  public void testUnknownEntries() {
+    assertSame(tuple(boolType, null), tuple(boolType, null));
+    assertFalse(tuple(boolType, null).isSubtypeOf(tuple(boolType, intType)));
+  }
+
+  @Test
+  public void testIsSubtypeOf() {
+    assertTrue(tuple(boolType, intType).isSubtypeOf(tuple(boolType, intType)));
+    assertTrue(tuple(boolType).isSubtypeOf(TypeTypeValue.getInstance()));
+    assertFalse(tuple(boolType).isSubtypeOf(tuple(intType)));
+    assertFalse(tuple(boolType).isSubtypeOf(tuple(boolType, boolType)));
+    assertFalse(tuple(boolType).isSubtypeOf(boolType));
+  }
+
+  @Test
+  public void testFunctionTypesAreShared() {
+    FunctionTypeValue f = FunctionTypeValue.getInstance(
+        tuple(boolType, boolType), boolType);
+    assertSame(f, FunctionTypeValue.getInstance(
+        tuple(boolType, boolType), boolType));
+    assertNotSame(f, FunctionTypeValue.getInstance(boolType, boolType));
+  }
+
+}
@@ -5,6 +5,7 @@ import static org.junit.Assert.*;
 import org.junit.Test;
 
 import java.util.ArrayList;
+import java.util.List;
 
 public class TestVariableIdentifier {
 
@@ -90,4 +91,32 @@ public class TestVariableIdentifier {
     
     assertEquals(identifier.toString(), "foo");
   }
+
+  @Test
+  public void testNamesAreInterned() {
+    List<String> parts = new ArrayList<>();
+    parts.add(new String("whdl"));
+    parts.add(new String("foo"));
+    VariableIdentifier a = new VariableIdentifier(parts);
+    VariableIdentifier b = new VariableIdentifier(
+        getNamespaceIdentifierInstance(), "foo");
+    assertEquals(a, b);
+    assertEquals(a.hashCode(), b.hashCode());
+    assertSame(a.getName(), b.getName());
+    // later changes to the list do not affect the identifier
+    parts.set(0, "other");
+    assertEquals(a, b);
+    assertEquals(a.hashCode(), b.hashCode());
+  }
+
+  @Test
+  public void testGetUnqualified() {
+    VariableIdentifier qualified = getInstance();
+    VariableIdentifier unqualified = qualified.getUnqualified();
+    assertEquals("foo", unqualified.getName());
+    assertTrue(unqualified.getNamespaceIdentifier().isEmpty());
+    // made once, and its own unqualified identifier
+    assertSame(unqualified, qualified.getUnqualified());
+    assertSame(unqualified, unqualified.getUnqualified());
+  }
 }
@@ -0,0 +1,83 @@
+package org.manifold.compiler.front;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.manifold.compiler.BooleanTypeValue;
+import org.manifold.compiler.BooleanValue;
+import org.manifold.compiler.IntegerTypeValue;
+import org.manifold.compiler.IntegerValue;
+import org.manifold.compiler.UndefinedBehaviourError;
+import org.manifold.compiler.Value;
+
+public class TestVariableResolver {
+
+  private static VariableIdentifier id(String name) {
+    return new VariableIdentifier(Arrays.asList(name));
+  }
+
+  private static void define(Scope scope, String name, Value value)
+      throws Exception {
+    scope.defineVariable(id(name), new LiteralExpression(value.getType()));
+    scope.assignVariable(id(name), new LiteralExpression(value));
+  }
+
+  @Test
+  public void testResolvedReferenceReadsVariable() throws Exception {
+    Scope outer = new Scope();
+    define(outer, "a", BooleanValue.getInstance(true));
+    define(outer, "b", IntegerValue.getInstance(7));
+    Scope inner = new Scope(outer);
+    define(inner, "c", BooleanValue.getInstance(false));
+
+    VariableReferenceExpression refB = new VariableReferenceExpression(id("b"));
+    VariableReferenceExpression refC = new VariableReferenceExpression(id("c"));
+    new VariableResolver(inner).resolve(
+        Arrays.<Expression>asList(refB, refC));
+    assertEquals(IntegerValue.getInstance(7), refB.getValue(inner));
+    assertEquals(BooleanValue.getInstance(false), refC.getValue(inner));
+    // and from a scope it was not resolved in
+    assertEquals(IntegerValue.getInstance(7), refB.getValue(outer));
+  }
+
+  @Test
+  public void testLaterDefinitionShadows() throws Exception {
+    Scope outer = new Scope();
+    define(outer, "x", BooleanValue.getInstance(true));
+    Scope inner = new Scope(outer);
+    VariableReferenceExpression ref = new VariableReferenceExpression(id("x"));
+    new VariableResolver(inner).resolve(Arrays.<Expression>asList(ref));
+    assertEquals(BooleanValue.getInstance(true), ref.getValue(inner));
+
+    define(inner, "x", IntegerValue.getInstance(3));
+    assertEquals(IntegerValue.getInstance(3), ref.getValue(inner));
+  }
+
+  @Test
+  public void testResolvesNestedReferences() throws Exception {
+    Scope scope = new Scope();
+    define(scope, "x", BooleanValue.getInstance(true));
+    VariableReferenceExpression inTuple =
+        new VariableReferenceExpression(id("x"));
+    VariableReferenceExpression target =
+        new VariableReferenceExpression(id("undefined"));
+    Expression tuple = new LiteralExpression(new TupleValue(
+        TupleTypeValue.getInstance(Arrays.asList(
+            BooleanTypeValue.getInstance(), IntegerTypeValue.getInstance())),
+        Arrays.<Expression>asList(inTuple,
+            new LiteralExpression(IntegerValue.getInstance(1)))));
+    // the undefined lvalue is skipped rather than reported
+    new VariableResolver(scope).resolve(Arrays.<Expression>asList(
+        new VariableAssignmentExpression(target, tuple)));
+    assertEquals(BooleanValue.getInstance(true), inTuple.getValue(scope));
+  }
+
+  @Test(expected = UndefinedBehaviourError.class)
+  public void testUndefinedReference() throws Exception {
+    Scope scope = new Scope();
+    new VariableReferenceExpression(id("nope")).getValue(scope);
+  }
+
+}
@@ -2,30 +2,52 @@ package org.manifold.compiler.serialization;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.io.File;
+import java.io.FileWriter;
 import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.HashMap;
 import java.util.Map;
 
 import org.junit.Before;
-import org.junit.Ignore;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.manifold.compiler.BooleanValue;
 import org.manifold.compiler.ConnectionType;
 import org.manifold.compiler.ConnectionValue;
+import org.manifold.compiler.IntegerValue;
 import org.manifold.compiler.NodeTypeValue;
 import org.manifold.compiler.NodeValue;
 import org.manifold.compiler.PortTypeValue;
+import org.manifold.compiler.StringTypeValue;
+import org.manifold.compiler.StringValue;
+import org.manifold.compiler.SymbolTable;
 import org.manifold.compiler.UndeclaredAttributeException;
 import org.manifold.compiler.UndeclaredIdentifierException;
 import org.manifold.compiler.Value;
 import org.manifold.compiler.middle.Schematic;
 import org.manifold.compiler.middle.SchematicException;
+import org.manifold.compiler.middle.serialization.SchematicBinaryDeserializer;
+import org.manifold.compiler.middle.serialization.SchematicBinarySerializer;
 import org.manifold.compiler.middle.serialization.SchematicDeserializer;
+import org.manifold.compiler.middle.serialization.SchematicSerializer;
+import org.manifold.compiler.middle.serialization.SerializationConsts.BinaryConsts;
 
 import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.io.Resources;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
@@ -52,6 +74,9 @@ public class TestSerialization {
 
   private Schematic testSchematic;
 
+  @Rule
+  public TemporaryFolder tmpFolder = new TemporaryFolder();
+
   @Before
   public void setup() throws SchematicException {
 
@@ -98,9 +123,315 @@ public class TestSerialization {
     testSchematic.addConnection(CONNECTION_NAME, con);
   }
 
-  @Ignore
   @Test
   public void testSerialize() throws IOException {
+    URL url = Resources
+        .getResource("org/manifold/compiler/serialization/data/"
+            + "deserialization-types-test.json");
+    JsonObject json = new JsonParser().parse(
+        Resources.toString(url, Charsets.UTF_8)).getAsJsonObject();
+    Schematic sch = new SchematicDeserializer().deserialize(json);
+
+    // the test file is in exactly the form the serializer writes
+    assertEquals(json, new SchematicSerializer().serialize(sch));
+  }
+
+  // Two nodes with Int, String and Bool attributes, joined by a wire.
+  private Schematic buildRoundTripSchematic() throws SchematicException {
+    Schematic sch = new Schematic("round trip");
+    PortTypeValue port = new PortTypeValue(new HashMap<>());
+    sch.addPortType("p", port);
+    NodeTypeValue nodeType = new NodeTypeValue(ImmutableMap.of(
+        "count", sch.getUserDefinedType("Int"),
+        "label", sch.getUserDefinedType("String"),
+        "flag", sch.getUserDefinedType("Bool")),
+        ImmutableMap.of("in", port, "out", port));
+    sch.addNodeType("n", nodeType);
+    ConnectionType wire = new ConnectionType(new HashMap<>());
+    sch.addConnectionType("wire", wire);
+    Map<String, Map<String, Value>> portAttrs = ImmutableMap.of(
+        "in", ImmutableMap.<String, Value>of(),
+        "out", ImmutableMap.<String, Value>of());
+    NodeValue a = new NodeValue(nodeType, ImmutableMap.of(
+        "count", new IntegerValue(42),
+        "label", new StringValue(StringTypeValue.getInstance(), "a:b \"c\""),
+        "flag", BooleanValue.getInstance(true)), portAttrs);
+    NodeValue b = new NodeValue(nodeType, ImmutableMap.of(
+        "count", new IntegerValue(-1),
+        "label", new StringValue(StringTypeValue.getInstance(), ""),
+        "flag", BooleanValue.getInstance(false)), portAttrs);
+    sch.addNode("a", a);
+    sch.addNode("b", b);
+    sch.addConnection("a_to_b", new ConnectionValue(wire,
+        a.getPort("out"), b.getPort("in"), new HashMap<>()));
+    return sch;
+  }
+
+  private void checkRoundTripSchematic(Schematic copy)
+      throws SchematicException {
+    assertEquals("round trip", copy.getName());
+    NodeValue copyA = copy.getNode("a");
+    assertEquals(42,
+        ((IntegerValue) copyA.getAttribute("count")).toInteger());
+    assertEquals("a:b \"c\"", copyA.getAttribute("label").toString());
+    assertTrue(((BooleanValue) copyA.getAttribute("flag")).toBoolean());
+    NodeValue copyB = copy.getNode("b");
+    assertEquals(-1,
+        ((IntegerValue) copyB.getAttribute("count")).toInteger());
+    ConnectionValue conn = copy.getConnection("a_to_b");
+    assertEquals(copyA.getPort("out"), conn.getFrom());
+    assertEquals(copyB.getPort("in"), conn.getTo());
+  }
+
+  @Test
+  public void testSerializeRoundTrip() throws IOException, SchematicException {
+    StringWriter out = new StringWriter();
+    new SchematicSerializer().serialize(buildRoundTripSchematic(), out);
+    checkRoundTripSchematic(new SchematicDeserializer().deserialize(
+        new StringReader(out.toString())));
+  }
+
+  // A node whose port carries an attribute declared on the port type.
+  private Schematic buildPortAttributeSchematic() throws SchematicException {
+    Schematic sch = new Schematic("port attributes");
+    PortTypeValue port = new PortTypeValue(ImmutableMap.of(
+        "w", sch.getUserDefinedType("Int")));
+    sch.addPortType("p", port);
+    NodeTypeValue nodeType = new NodeTypeValue(new HashMap<>(),
+        ImmutableMap.of("in", port));
+    sch.addNodeType("n", nodeType);
+    sch.addNode("a", new NodeValue(nodeType, new HashMap<>(),
+        ImmutableMap.of("in", ImmutableMap.<String, Value>of(
+            "w", new IntegerValue(3)))));
+    return sch;
+  }
+
+  @Test
+  public void testSerializeRoundTripPortAttributes()
+      throws IOException, SchematicException {
+    StringWriter out = new StringWriter();
+    new SchematicSerializer().serialize(buildPortAttributeSchematic(), out);
+    Schematic copy = new SchematicDeserializer().deserialize(
+        new StringReader(out.toString()));
+    assertEquals(3, ((IntegerValue) copy.getNode("a").getPort("in")
+        .getAttribute("w")).toInteger());
+  }
+
+  @Test
+  public void testBinaryRoundTrip() throws IOException, SchematicException {
+    File file = tmpFolder.newFile("round-trip.mfb");
+    new SchematicBinarySerializer().serialize(buildRoundTripSchematic(),
+        file);
+    checkRoundTripSchematic(new SchematicBinaryDeserializer().deserialize(
+        file));
+  }
+
+  @Test
+  public void testBinaryMatchesJson() throws IOException, SchematicException {
+    URL url = Resources
+        .getResource("org/manifold/compiler/serialization/data/"
+            + "deserialization-types-test.json");
+    JsonObject json = new JsonParser().parse(
+        Resources.toString(url, Charsets.UTF_8)).getAsJsonObject();
+    Schematic sch = new SchematicDeserializer().deserialize(json);
+
+    File file = tmpFolder.newFile("types-test.mfb");
+    new SchematicBinarySerializer().serialize(sch, file);
+    Schematic copy = new SchematicBinaryDeserializer().deserialize(file);
+    assertEquals(json, new SchematicSerializer().serialize(copy));
+  }
+
+  @Test
+  public void testBinaryLazyRoundTrip()
+      throws IOException, SchematicException {
+    File file = tmpFolder.newFile("lazy.mfb");
+    new SchematicBinarySerializer().serialize(buildRoundTripSchematic(),
+        file);
+    Schematic lazy = new SchematicBinaryDeserializer().deserializeLazily(
+        file);
+    assertEquals(ImmutableSet.of("a", "b"), lazy.getNodes().keySet());
+    assertEquals(ImmutableSet.of("a_to_b"),
+        lazy.getConnections().keySet());
+    checkRoundTripSchematic(lazy);
+    // each node is only read once
+    assertSame(lazy.getNode("a"), lazy.getNodes().get("a"));
+    assertSame(lazy.getConnection("a_to_b").getFrom().getParent(),
+        lazy.getNode("a"));
+    assertEquals("b", lazy.getNodeName(lazy.getNode("b")));
+    assertFalse(lazy.getNodes().containsKey("c"));
+    assertEquals(2, lazy.freeze().getNumberOfNodes());
+  }
+
+  @Test
+  public void testBinaryLazyReadsOnlyWhatIsAsked()
+      throws IOException, SchematicException {
+    Schematic sch = new Schematic("lazy");
+    PortTypeValue port = new PortTypeValue(new HashMap<>());
+    sch.addPortType("p", port);
+    NodeTypeValue nodeType = new NodeTypeValue(new HashMap<>(),
+        ImmutableMap.of("p", port));
+    sch.addNodeType("n", nodeType);
+    Map<String, Map<String, Value>> portAttrs =
+        ImmutableMap.of("p", ImmutableMap.<String, Value>of());
+    sch.addNode("a", new NodeValue(nodeType, new HashMap<>(), portAttrs));
+    sch.addNode("b", new NodeValue(nodeType, new HashMap<>(), portAttrs));
+    File file = tmpFolder.newFile("lazy.mfb");
+    // frozen, so that the nodes are written in name order
+    new SchematicBinarySerializer().serialize(sch.freeze(), file);
+
+    // Damage the node type of "b": the NODES section is the node count,
+    // then per node six one-byte varints: name, node type, no attributes,
+    // one port, port name, no port attributes.
+    try (FileChannel channel = FileChannel.open(file.toPath(),
+        StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      ByteBuffer header = ByteBuffer.allocate(BinaryConsts.HEADER_SIZE
+          + 4 * BinaryConsts.DIRECTORY_ENTRY_SIZE);
+      channel.read(header, 0);
+      header.position(BinaryConsts.HEADER_SIZE);
+      long nodesOffset = -1;
+      for (int i = 0; i < 4; ++i) {
+        int id = header.getInt();
+        long offset = header.getLong();
+        header.getLong();
+        if (id == BinaryConsts.SECTION_NODES) {
+          nodesOffset = offset;
+        }
+      }
+      channel.write(ByteBuffer.wrap(new byte[] {0x7f}), nodesOffset + 8);
+    }
+
+    Schematic lazy = new SchematicBinaryDeserializer().deserializeLazily(
+        file);
+    assertEquals("a", lazy.getNodeName(lazy.getNode("a")));
+    try {
+      lazy.getNode("b");
+      fail("damaged node was not read");
+    } catch (UncheckedIOException e) {
+      // "b" was only read when it was asked for
+    }
+  }
+
+  @Test(expected = UndeclaredIdentifierException.class)
+  public void testBinaryLazyNonexistentNode()
+      throws IOException, SchematicException {
+    File file = tmpFolder.newFile("lazy.mfb");
+    new SchematicBinarySerializer().serialize(buildRoundTripSchematic(),
+        file);
+    new SchematicBinaryDeserializer().deserializeLazily(file).getNode("c");
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void testBinaryLazyIsReadOnly()
+      throws IOException, SchematicException {
+    File file = tmpFolder.newFile("lazy.mfb");
+    Schematic sch = buildRoundTripSchematic();
+    new SchematicBinarySerializer().serialize(sch, file);
+    new SchematicBinaryDeserializer().deserializeLazily(file)
+        .addNode("c", sch.getNode("a"));
+  }
+
+  @Test(expected = IOException.class)
+  public void testBinaryRejectsJson() throws IOException, SchematicException {
+    File file = tmpFolder.newFile("not-binary.mfb");
+    try (Writer out = new FileWriter(file)) {
+      out.write("{\"name\": \"not binary\"}");
+    }
+    new SchematicBinaryDeserializer().deserialize(file);
+  }
+
+  // A chain of `n` nodes, enough to be built in several parallel chunks.
+  private String buildChainJson(int n) throws IOException, SchematicException {
+    Schematic sch = new Schematic("chain");
+    PortTypeValue port = new PortTypeValue(new HashMap<>());
+    sch.addPortType("p", port);
+    NodeTypeValue nodeType = new NodeTypeValue(ImmutableMap.of(
+        "index", sch.getUserDefinedType("Int")),
+        ImmutableMap.of("in", port, "out", port));
+    sch.addNodeType("n", nodeType);
+    ConnectionType wire = new ConnectionType(new HashMap<>());
+    sch.addConnectionType("wire", wire);
+    Map<String, Map<String, Value>> portAttrs = ImmutableMap.of(
+        "in", ImmutableMap.<String, Value>of(),
+        "out", ImmutableMap.<String, Value>of());
+    NodeValue previous = null;
+    for (int i = 0; i < n; ++i) {
+      NodeValue node = new NodeValue(nodeType, ImmutableMap.<String, Value>of(
+          "index", new IntegerValue(i)), portAttrs);
+      sch.addNode("n" + i, node);
+      if (previous != null) {
+        sch.addConnection("w" + i, new ConnectionValue(wire,
+            previous.getPort("out"), node.getPort("in"), new HashMap<>()));
+      }
+      previous = node;
+    }
+    StringWriter out = new StringWriter();
+    new SchematicSerializer().serialize(sch, out);
+    return out.toString();
+  }
+
+  @Test
+  public void testParallelDeserializeMatchesSerial()
+      throws IOException, SchematicException {
+    String text = buildChainJson(5000);
+    JsonObject expected = new JsonParser().parse(text).getAsJsonObject();
+
+    SchematicDeserializer deserializer = new SchematicDeserializer();
+    deserializer.setParallel(true);
+    Schematic streamed = deserializer.deserialize(new StringReader(text));
+    Schematic tree = deserializer.deserialize(expected);
+
+    SchematicSerializer serializer = new SchematicSerializer();
+    assertEquals(expected, serializer.serialize(streamed));
+    assertEquals(expected, serializer.serialize(tree));
+    ConnectionValue wire = streamed.getConnection("w4321");
+    assertSame(streamed.getNode("n4320").getPort("out"), wire.getFrom());
+    assertSame(streamed.getNode("n4321").getPort("in"), wire.getTo());
+  }
+
+  @Test
+  public void testDeserializeSharesAttributeValues()
+      throws IOException, SchematicException {
+    String text = "{\"name\": \"shared\","
+        + "\"portTypes\": {\"p\": {}},"
+        + "\"nodeTypes\": {\"reg\": {\"attributes\": {"
+        + "  \"width\": \"Int\", \"label\": \"String\"},"
+        + "  \"ports\": {\"out\": \"p\"}}},"
+        + "\"connectionTypes\": {}, \"constraintTypes\": {},"
+        + "\"nodes\": {"
+        + "  \"r0\": {\"type\": \"reg\", \"portAttrs\": {\"out\": {}},"
+        + "    \"attributes\": {\"width\": 8, \"label\": \"q\"}},"
+        + "  \"r1\": {\"type\": \"reg\", \"portAttrs\": {\"out\": {}},"
+        + "    \"attributes\": {\"width\": 8, \"label\": \"q\"}},"
+        + "  \"r2\": {\"type\": \"reg\", \"portAttrs\": {\"out\": {}},"
+        + "    \"attributes\": {\"width\": 5000, \"label\": \"q\"}}},"
+        + "\"connections\": {}}";
+    SchematicDeserializer deserializer = new SchematicDeserializer();
+    Schematic streamed = deserializer.deserialize(new StringReader(text));
+    Schematic tree = deserializer.deserialize(
+        new JsonParser().parse(text).getAsJsonObject());
+    for (Schematic sch : new Schematic[] {streamed, tree}) {
+      NodeValue r0 = sch.getNode("r0");
+      NodeValue r1 = sch.getNode("r1");
+      NodeValue r2 = sch.getNode("r2");
+      assertSame(r0.getAttribute("width"), r1.getAttribute("width"));
+      assertSame(r0.getAttribute("label"), r2.getAttribute("label"));
+      assertEquals(5000,
+          ((IntegerValue) r2.getAttribute("width")).toInteger());
+    }
+  }
+
+  @Test(expected = UndeclaredIdentifierException.class)
+  public void testParallelDeserializeReportsErrors() throws Throwable {
+    // a connection in the middle of the section refers to a missing node
+    String text = buildChainJson(3000).replace("\"n2000:in\"",
+        "\"bogus:in\"");
+    SchematicDeserializer deserializer = new SchematicDeserializer();
+    deserializer.setParallel(true);
+    try {
+      deserializer.deserialize(new StringReader(text));
+    } catch (RuntimeException e) {
+      throw e.getCause();
+    }
   }
 
   @Test
@@ -148,4 +479,105 @@ public class TestSerialization {
     assertEquals(andNode.getPort("out1"), conVal.getFrom());
     assertEquals(andNode2.getPort("in2"), conVal.getTo());
   }
+
+  @Test
+  public void testStreamingDeserializeMatchesTree() throws IOException,
+      UndeclaredIdentifierException, UndeclaredAttributeException {
+    URL url = Resources
+        .getResource("org/manifold/compiler/serialization/data/"
+            + "deserialization-types-test.json");
+    String text = Resources.toString(url, Charsets.UTF_8);
+
+    Schematic tree = new SchematicDeserializer().deserialize(
+        new JsonParser().parse(text).getAsJsonObject());
+    Schematic streamed = new SchematicDeserializer().deserialize(
+        new StringReader(text));
+
+    assertEquals(tree.getName(), streamed.getName());
+    assertEquals(tree.getNodes().keySet(), streamed.getNodes().keySet());
+    assertEquals(tree.getConnections().keySet(),
+        streamed.getConnections().keySet());
+    assertEquals(tree.getNodeType("and").getPorts().keySet(),
+        streamed.getNodeType("and").getPorts().keySet());
+    assertEquals(streamed.getPortType("digital_in"),
+        streamed.getNodeType("and").getPorts().get("in1"));
+    streamed.getConstraintType("rope");
+
+    NodeValue andNode = streamed.getNode("and_node");
+    NodeValue andNode2 = streamed.getNode("and_node2");
+    assertFalse(((BooleanValue) andNode.getAttribute("is_awesome"))
+        .toBoolean());
+    assertTrue(((BooleanValue) andNode2.getAttribute("is_awesome"))
+        .toBoolean());
+    ConnectionValue conVal = streamed.getConnection("con1");
+    assertEquals(andNode.getPort("out1"), conVal.getFrom());
+    assertEquals(andNode2.getPort("in2"), conVal.getTo());
+  }
+
+  @Test
+  public void testStreamingMatchesTreePortAttributes()
+      throws IOException, SchematicException {
+    StringWriter out = new StringWriter();
+    new SchematicSerializer().serialize(buildPortAttributeSchematic(), out);
+    String text = out.toString();
+
+    Schematic tree = new SchematicDeserializer().deserialize(
+        new JsonParser().parse(text).getAsJsonObject());
+    Schematic streamed = new SchematicDeserializer().deserialize(
+        new StringReader(text));
+
+    assertEquals(3, ((IntegerValue) tree.getNode("a").getPort("in")
+        .getAttribute("w")).toInteger());
+    assertEquals(new SchematicSerializer().serialize(tree),
+        new SchematicSerializer().serialize(streamed));
+  }
+
+  @Test
+  public void testStreamingDeserializeOutOfOrder() throws IOException,
+      UndeclaredIdentifierException, UndeclaredAttributeException {
+    // connections first, then nodes, then types, and the name last
+    String text = "{"
+        + "\"connections\": {\"c\": {\"from\": \"a:out\","
+        + "  \"to\": \"b:in\", \"type\": \"wire\"}},"
+        + "\"nodes\": {"
+        + "  \"a\": {\"portAttrs\": {\"out\": {}}, \"type\": \"src\","
+        + "    \"attributes\": {\"width\": 8}},"
+        + "  \"b\": {\"type\": \"sink\", \"portAttrs\": {\"in\": {}}}},"
+        + "\"nodeTypes\": {"
+        + "  \"src\": {\"attributes\": {\"width\": \"Int\"},"
+        + "    \"ports\": {\"out\": \"p\"}},"
+        + "  \"sink\": {\"ports\": {\"in\": \"p\"}}},"
+        + "\"connectionTypes\": {\"wire\": {\"attributes\": {}}},"
+        + "\"portTypes\": {\"p\": {}},"
+        + "\"name\": \"backwards\""
+        + "}";
+    Schematic sch = new SchematicDeserializer().deserialize(
+        new StringReader(text));
+    assertEquals("backwards", sch.getName());
+    assertEquals(8,
+        ((IntegerValue) sch.getNode("a").getAttribute("width")).toInteger());
+    ConnectionValue conVal = sch.getConnection("c");
+    assertEquals(sch.getNode("a").getPort("out"), conVal.getFrom());
+    assertEquals(sch.getNode("b").getPort("in"), conVal.getTo());
+  }
+
+  @Test
+  public void testDeserializeKeepsNamesOutOfSymbolTable()
+      throws IOException, SchematicException {
+    String text = "{\"name\": \"names\","
+        + "\"portTypes\": {\"p\": {}},"
+        + "\"nodeTypes\": {\"n\": {\"ports\": {\"x7q_p\": \"p\"}}},"
+        + "\"connectionTypes\": {\"wire\": {}}, \"constraintTypes\": {},"
+        + "\"nodes\": {"
+        + "  \"x7q_a\": {\"type\": \"n\", \"portAttrs\": {\"x7q_p\": {}}},"
+        + "  \"x7q_b\": {\"type\": \"n\", \"portAttrs\": {\"x7q_p\": {}}}},"
+        + "\"connections\": {\"c\": {\"type\": \"wire\","
+        + "  \"from\": \"x7q_a:x7q_p\","
+        + "  \"to\": \"x7q_b:x7q_p\"}}}";
+    new SchematicDeserializer().deserialize(new StringReader(text));
+    // names in connection references do not stay in the global table
+    SymbolTable symbols = SymbolTable.getInstance();
+    assertEquals(-1, symbols.lookup("x7q_a"));
+    assertEquals(-1, symbols.lookup("x7q_p"));
+  }
 }